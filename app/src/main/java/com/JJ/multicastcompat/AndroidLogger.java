@@ -0,0 +1,17 @@
+package com.JJ.multicastcompat;
+
+import android.util.Log;
+
+import com.JJ.multicastcompat.spi.Logger;
+
+/**
+ * Forwards the log output of the core module to logcat.
+ */
+class AndroidLogger implements Logger {
+	
+	@Override
+	public void log(int priority, String tag, String message, Throwable throwable) {
+		if (throwable != null) message = message + '\n' + Log.getStackTraceString(throwable);
+		Log.println(priority, tag, message);
+	}
+}
@@ -0,0 +1,67 @@
+package com.JJ.multicastcompat;
+
+import android.content.Context;
+import android.net.wifi.WifiManager;
+import android.os.Build;
+
+import com.JJ.multicastcompat.spi.DefaultPlatform;
+import com.JJ.multicastcompat.spi.Platform;
+import com.cafbit.netlib.InterfaceUtil;
+import com.cafbit.netlib.NetUtil;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Android platform: the primary interface is the first wifi or ethernet interface
+ * and multicast packets are only delivered while a wifi multicast lock is held.
+ */
+class AndroidPlatform implements Platform {
+	
+	private final NetUtil netUtil;
+	private WifiManager.MulticastLock multicastLock;
+	
+	AndroidPlatform(Context context) {
+		netUtil = new NetUtil(context);
+	}
+	
+	@Override
+	public List<NetworkInterface> getInterfaces(boolean allInterfaces) throws IOException {
+		if (allInterfaces) return InterfaceUtil.getMulticastInterfaces();
+		List<NetworkInterface> interfaces = new ArrayList<>();
+		NetworkInterface networkInterface = netUtil.getFirstWifiOrEthernetInterface();
+		if (networkInterface != null) interfaces.add(networkInterface);
+		return interfaces;
+	}
+	
+	@Override
+	public List<InetAddress> getMulticastGroups() {
+		return DefaultPlatform.MDNS_GROUPS;
+	}
+	
+	@Override
+	public int getMulticastPort() {
+		return DefaultPlatform.MDNS_PORT;
+	}
+	
+	@Override
+	public synchronized void acquireMulticastLock() {
+		if (multicastLock == null) {
+			multicastLock = netUtil.getWifiManager().createMulticastLock("unmote");
+		}
+		multicastLock.acquire();
+	}
+	
+	@Override
+	public synchronized void releaseMulticastLock() {
+		if (multicastLock != null && multicastLock.isHeld()) multicastLock.release();
+	}
+	
+	@Override
+	public boolean supportsMulticastChannels() {
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+	}
+}
@@ -4,44 +4,63 @@ import android.content.Context;
 import android.net.nsd.NsdManager;
 import android.net.nsd.NsdServiceInfo;
 
+import com.JJ.multicastcompat.spi.Log;
+
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.Map;
 
 @SuppressWarnings("unused")
 public class MulticastCompat {
 	
 	private static final String TAG = MulticastCompat.class.getSimpleName();
+	
+	static {
+		Log.setLogger(new AndroidLogger());
+	}
+	
 	private final NsdManager nsdManager;
 	public boolean notifyOnUpdate = false;
-	private LinkedHashMap<InetAddress, MulticastServiceInfo> map = new LinkedHashMap<>();
-	private NsdManager.DiscoveryListener discoveryListener;
+	private final ServiceStore services = new ServiceStore();
+	// serializes merging found services, which are reported by the engine and NsdManager threads
+	private final Object servicesLock = new Object();
+	private final Map<String, NsdManager.DiscoveryListener> discoveryListeners = new HashMap<>();
 	private NsdManager.ResolveListener resolveListener;
 	private DiscoveryListener relayDiscoveryListener;
-	private MulticastSocket multicastSocket;
+	private UpdateListener updateListener;
+	private MulticastEngine engine;
+	private MulticastListener engineListener;
 	
 	private boolean enableNsd = true;
 	private boolean enableSocket = true;
 	
 	/**
 	 * This creates a new MulticastCompat object.
-	 * An Thread for receiving messages will be opened for future use through discoverServices()
+	 * All MulticastCompat objects of a process share one thread for receiving messages,
+	 * which will be started for future use through discoverServices().
+	 * Call close() once this object is not needed anymore.
 	 *
 	 * @param context The context is needed to acquire the NsdManager system service
 	 */
 	public MulticastCompat(Context context) {
 		this.nsdManager = (NsdManager) context.getSystemService(Context.NSD_SERVICE);
 		setupNsdManagerProxy();
-		multicastSocket = new MulticastSocket(context, new MulticastSocket.MulticastListener() {
-			@Override
-			public void onServiceFound(MulticastServiceInfo serviceInfo) {
-				checkOnServiceFound(serviceInfo);
-			}
-		});
-		multicastSocket.start();
+		setupEngine(context, false);
 	}
 	
 	public MulticastCompat(Context context, boolean enableNsd, boolean enableSocket) {
+		this(context, enableNsd, enableSocket, false);
+	}
+	
+	/**
+	 * @param enableNsd     whether to discover services through the system NsdManager
+	 * @param enableSocket  whether to discover services through an own multicast socket
+	 * @param allInterfaces whether the multicast socket should listen on every eligible network
+	 *                      interface instead of just the first wifi or ethernet interface
+	 */
+	public MulticastCompat(Context context, boolean enableNsd, boolean enableSocket, boolean allInterfaces) {
 		if (enableNsd) {
 			this.nsdManager = (NsdManager) context.getSystemService(Context.NSD_SERVICE);
 			setupNsdManagerProxy();
@@ -50,19 +69,31 @@ public class MulticastCompat {
 			this.enableNsd = false;
 		}
 		if (enableSocket) {
-			multicastSocket = new MulticastSocket(context, new MulticastSocket.MulticastListener() {
-				@Override
-				public void onServiceFound(MulticastServiceInfo serviceInfo) {
-					checkOnServiceFound(serviceInfo);
-				}
-			});
-			multicastSocket.start();
+			setupEngine(context, allInterfaces);
 		} else {
 			this.enableSocket = false;
 		}
 		if (!enableNsd && !enableSocket) throw new IllegalStateException("all multicast methods disabled");
 	}
 	
+	/**
+	 * This attaches to the process wide multicast engine.
+	 */
+	private void setupEngine(Context context, boolean allInterfaces) {
+		engine = MulticastEngine.acquire(new AndroidPlatform(context.getApplicationContext()), allInterfaces);
+		engineListener = new MulticastListener() {
+			@Override
+			public void onServiceFound(MulticastServiceInfo serviceInfo) {
+				checkOnServiceFound(serviceInfo);
+			}
+			
+			@Override
+			public void onServiceLost(MulticastServiceInfo serviceInfo) {
+				checkOnServiceLost(serviceInfo);
+			}
+		};
+	}
+	
 	/**
 	 * This checks and updates the service tracking list.
 	 *
@@ -71,20 +102,71 @@ public class MulticastCompat {
 	public void checkOnServiceFound(MulticastServiceInfo serviceInfo) {
 		if (serviceInfo == null) return;
 		if (serviceInfo.host == null) return;
-		if (map.containsKey(serviceInfo.host)) {
-			map.put(serviceInfo.host, MulticastServiceInfo.merge(map.get(serviceInfo.host), serviceInfo));
-			if (notifyOnUpdate) relayDiscoveryListener.onServiceFound(map.get(serviceInfo.host));
-		} else {
-			map.put(serviceInfo.host, serviceInfo);
+		String instanceName = ServiceStore.getInstanceName(serviceInfo);
+		if (instanceName == null) return;
+		MulticastServiceInfo known;
+		MulticastServiceInfo merged;
+		ServiceChanges changes;
+		synchronized (servicesLock) {
+			known = services.get(instanceName);
+			if (known == null) {
+				services.put(serviceInfo.compact());
+				merged = null;
+				changes = null;
+			} else {
+				// repeated announcements change nothing and are dropped here without allocating
+				changes = MulticastServiceInfo.diff(known, serviceInfo);
+				if (changes.isEmpty()) return;
+				merged = MulticastServiceInfo.merge(known, serviceInfo).compact();
+				services.put(merged);
+			}
+		}
+		if (known == null) {
 			relayDiscoveryListener.onServiceFound(serviceInfo);
+		} else {
+			if (updateListener != null) updateListener.onServiceUpdated(known, merged, changes);
+			if (notifyOnUpdate) relayDiscoveryListener.onServiceFound(merged);
+		}
+	}
+	
+	/**
+	 * This removes a lost service from the service tracking list.
+	 *
+	 * @param serviceInfo the lost service, matched by service name and type
+	 */
+	public void checkOnServiceLost(MulticastServiceInfo serviceInfo) {
+		if (serviceInfo == null) return;
+		String instanceName = ServiceStore.getInstanceName(serviceInfo);
+		if (instanceName == null) return;
+		MulticastServiceInfo known;
+		synchronized (servicesLock) {
+			known = services.remove(instanceName);
 		}
+		if (known != null) relayDiscoveryListener.onServiceLost(known);
 	}
 	
 	/**
 	 * This configures the NsdManager Proxy for recieving and handling events.
 	 */
 	private void setupNsdManagerProxy() {
-		discoveryListener = new NsdManager.DiscoveryListener() {
+		resolveListener = new NsdManager.ResolveListener() {
+			@Override
+			public void onResolveFailed(NsdServiceInfo nsdServiceInfo, int i) {
+				relayDiscoveryListener.onResolveFailed(NsdServiceInfoConverter.fromNsdServiceInfo(nsdServiceInfo), i);
+			}
+			
+			@Override
+			public void onServiceResolved(NsdServiceInfo nsdServiceInfo) {
+				checkOnServiceFound(NsdServiceInfoConverter.fromNsdServiceInfo(nsdServiceInfo));
+			}
+		};
+	}
+	
+	/**
+	 * NsdManager needs a separate listener for every browsed service type.
+	 */
+	private NsdManager.DiscoveryListener createNsdDiscoveryListener() {
+		return new NsdManager.DiscoveryListener() {
 			@Override
 			public void onStartDiscoveryFailed(String s, int i) {
 				if (i == NsdManager.FAILURE_INTERNAL_ERROR) {
@@ -112,26 +194,21 @@ public class MulticastCompat {
 			
 			@Override
 			public void onServiceFound(NsdServiceInfo nsdServiceInfo) {
-				checkOnServiceFound(new MulticastServiceInfo(nsdServiceInfo));
+				checkOnServiceFound(NsdServiceInfoConverter.fromNsdServiceInfo(nsdServiceInfo));
 				resolveService(nsdServiceInfo);
-				relayDiscoveryListener.onServiceFound(new MulticastServiceInfo(nsdServiceInfo));
+				relayDiscoveryListener.onServiceFound(NsdServiceInfoConverter.fromNsdServiceInfo(nsdServiceInfo));
 			}
 			
 			@Override
 			public void onServiceLost(NsdServiceInfo nsdServiceInfo) {
-				map.remove(nsdServiceInfo.getHost());
-				relayDiscoveryListener.onServiceLost(new MulticastServiceInfo(nsdServiceInfo));
-			}
-		};
-		resolveListener = new NsdManager.ResolveListener() {
-			@Override
-			public void onResolveFailed(NsdServiceInfo nsdServiceInfo, int i) {
-				relayDiscoveryListener.onResolveFailed(new MulticastServiceInfo(nsdServiceInfo), i);
-			}
-			
-			@Override
-			public void onServiceResolved(NsdServiceInfo nsdServiceInfo) {
-				checkOnServiceFound(new MulticastServiceInfo(nsdServiceInfo));
+				MulticastServiceInfo serviceInfo = NsdServiceInfoConverter.fromNsdServiceInfo(nsdServiceInfo);
+				String instanceName = ServiceStore.getInstanceName(serviceInfo);
+				if (instanceName != null) {
+					synchronized (servicesLock) {
+						services.remove(instanceName);
+					}
+				}
+				relayDiscoveryListener.onServiceLost(serviceInfo);
 			}
 		};
 	}
@@ -140,14 +217,25 @@ public class MulticastCompat {
 		this.relayDiscoveryListener = discoveryListener;
 	}
 	
+	/**
+	 * Get notified when a known service changes, independent of notifyOnUpdate.
+	 *
+	 * @param updateListener the listener, or null to remove it
+	 */
+	public void setUpdateListener(UpdateListener updateListener) {
+		this.updateListener = updateListener;
+	}
+	
 	public void discoverServices(String serviceType) {
 		if (relayDiscoveryListener == null) throw new NullPointerException();
-		if (this.enableNsd) {
-			nsdManager.discoverServices(serviceType, NsdManager.PROTOCOL_DNS_SD, this.discoveryListener);
+		if (this.enableNsd && !discoveryListeners.containsKey(serviceType)) {
+			NsdManager.DiscoveryListener discoveryListener = createNsdDiscoveryListener();
+			discoveryListeners.put(serviceType, discoveryListener);
+			nsdManager.discoverServices(serviceType, NsdManager.PROTOCOL_DNS_SD, discoveryListener);
 		}
 		if (this.enableSocket) {
 			try {
-				multicastSocket.discoverServices(serviceType);
+				engine.subscribe(serviceType, engineListener);
 			} catch (IOException e) {
 				//TODO: only escalate internal error when both failed
 				relayDiscoveryListener.onStartDiscoveryFailed(serviceType, NsdManager.FAILURE_INTERNAL_ERROR);
@@ -155,8 +243,50 @@ public class MulticastCompat {
 		}
 	}
 	
+	/**
+	 * Stop discovering a single service type.
+	 *
+	 * @param serviceType the service type passed to discoverServices()
+	 */
+	public void stopServiceDiscovery(String serviceType) {
+		if (this.enableNsd) {
+			NsdManager.DiscoveryListener discoveryListener = discoveryListeners.remove(serviceType);
+			if (discoveryListener != null) nsdManager.stopServiceDiscovery(discoveryListener);
+		}
+		if (this.enableSocket) {
+			engine.unsubscribe(serviceType, engineListener);
+		}
+	}
+	
+	/**
+	 * Stop discovering all service types.
+	 * Once no other MulticastCompat object is discovering anymore, the multicast socket
+	 * is closed and the multicast lock released before this returns.
+	 * Discovery can be started again with discoverServices() at any time.
+	 */
 	public void stopServiceDiscovery() {
-		//nsdManager.stopServiceDiscovery(this.discoveryListener);
+		if (this.enableNsd) {
+			for (NsdManager.DiscoveryListener discoveryListener : discoveryListeners.values()) {
+				nsdManager.stopServiceDiscovery(discoveryListener);
+			}
+			discoveryListeners.clear();
+		}
+		if (this.enableSocket) {
+			engine.unsubscribe(engineListener);
+		}
+	}
+	
+	/**
+	 * Stop discovering and detach from the shared multicast engine.
+	 * The engine thread terminates when the last MulticastCompat object is closed.
+	 * This object can not be used anymore afterwards.
+	 */
+	public void close() {
+		stopServiceDiscovery();
+		if (this.enableSocket && engine != null) {
+			engine.release();
+			engine = null;
+		}
 	}
 	
 	public void resolveService(NsdServiceInfo serviceInfo) {
@@ -174,8 +304,68 @@ public class MulticastCompat {
 		});
 	}
 	
+	/**
+	 * @return a copy of the discovered services by host, of several services on one host only one is included
+	 * @deprecated use {@link #getServiceStore()}, which keeps every service instance and can be read from any thread
+	 */
+	@Deprecated
 	public LinkedHashMap<InetAddress, MulticastServiceInfo> getDiscoveredServices() {
-		return this.map;
+		LinkedHashMap<InetAddress, MulticastServiceInfo> map = new LinkedHashMap<>();
+		for (MulticastServiceInfo serviceInfo : services.getAll()) {
+			if (serviceInfo.host != null) map.put(serviceInfo.host, serviceInfo);
+		}
+		return map;
+	}
+	
+	/**
+	 * @return the discovered services by instance name, indexed by type, host and attribute
+	 */
+	public ServiceStore getServiceStore() {
+		return services;
+	}
+	
+	/**
+	 * Configure how received packets are processed.
+	 * Packets are received on one thread and handed to worker threads through a bounded queue,
+	 * which parse them and call the listeners. This only affects the multicast socket threads
+	 * started afterwards, i.e. it should be called before the first MulticastCompat object is created.
+	 *
+	 * @param workers       the number of threads parsing packets and calling the listeners, defaults to 1
+	 * @param queueCapacity the number of received packets which may wait for a worker, defaults to 32
+	 * @param dropPolicy    which packet to drop when the queue is full, defaults to DROP_OLDEST
+	 */
+	public static void setPipelineConfiguration(int workers, int queueCapacity, MulticastEngine.DropPolicy dropPolicy) {
+		MulticastEngine.configure(workers, queueCapacity, dropPolicy);
+	}
+	
+	/**
+	 * @return the queue and buffer pool occupancy and the packet counters of the multicast socket,
+	 * or null if the socket is disabled
+	 */
+	public PipelineStatistics getPipelineStatistics() {
+		if (!this.enableSocket || engine == null) return null;
+		return engine.getPipelineStatistics();
+	}
+	
+	/**
+	 * @return the packet, cache and query counters and the latencies of the multicast socket,
+	 * or null if the socket is disabled
+	 */
+	public DiscoveryMetrics getMetrics() {
+		if (!this.enableSocket || engine == null) return null;
+		return engine.getMetrics();
+	}
+	
+	/**
+	 * Push the metrics of the multicast socket to a reporter periodically while discovery is running.
+	 * The socket is shared by all MulticastCompat objects, so is the reporter.
+	 *
+	 * @param reporter       the reporter, or null to stop reporting
+	 * @param intervalMillis the reporting interval
+	 */
+	public void setMetricsReporter(MetricsReporter reporter, long intervalMillis) {
+		if (!this.enableSocket || engine == null) return;
+		engine.setMetricsReporter(reporter, intervalMillis);
 	}
 	
 	public interface DiscoveryListener {
@@ -193,4 +383,16 @@ public class MulticastCompat {
 		
 		void onServiceLost(MulticastServiceInfo serviceInfo);
 	}
+	
+	public interface UpdateListener {
+		/**
+		 * Called when a service which has already been found changed,
+		 * never for a repeated announcement which changes nothing.
+		 *
+		 * @param oldServiceInfo the service as known before
+		 * @param newServiceInfo the service with the changes merged in
+		 * @param changes        the changed fields and attribute keys
+		 */
+		void onServiceUpdated(MulticastServiceInfo oldServiceInfo, MulticastServiceInfo newServiceInfo, ServiceChanges changes);
+	}
 }
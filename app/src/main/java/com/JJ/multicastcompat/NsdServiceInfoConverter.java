@@ -0,0 +1,48 @@
+package com.JJ.multicastcompat;
+
+import android.net.nsd.NsdServiceInfo;
+import android.os.Build;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Converts between the platform independent MulticastServiceInfo and Android's NsdServiceInfo.
+ */
+public final class NsdServiceInfoConverter {
+	
+	private NsdServiceInfoConverter() {
+	}
+	
+	public static MulticastServiceInfo fromNsdServiceInfo(NsdServiceInfo nsdServiceInfo) {
+		MulticastServiceInfo serviceInfo = new MulticastServiceInfo();
+		serviceInfo.serviceType = nsdServiceInfo.getServiceType();
+		serviceInfo.serviceName = nsdServiceInfo.getServiceName();
+		serviceInfo.port = nsdServiceInfo.getPort();
+		serviceInfo.host = nsdServiceInfo.getHost();
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			serviceInfo.attributes = new HashMap<>();
+			Map<String, byte[]> map = nsdServiceInfo.getAttributes();
+			for (String key : map.keySet()) {
+				// boolean attributes have no value
+				byte[] value = map.get(key);
+				serviceInfo.attributes.put(key, value != null ? new String(value) : null);
+			}
+		}
+		return serviceInfo;
+	}
+	
+	public static NsdServiceInfo toNsdServiceInfo(MulticastServiceInfo serviceInfo) {
+		NsdServiceInfo nsdServiceInfo = new NsdServiceInfo();
+		nsdServiceInfo.setServiceName(serviceInfo.serviceName);
+		nsdServiceInfo.setServiceType(serviceInfo.serviceType);
+		nsdServiceInfo.setHost(serviceInfo.host);
+		nsdServiceInfo.setPort(serviceInfo.port);
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			for (String key : serviceInfo.attributes.keySet()) {
+				nsdServiceInfo.setAttribute(key, serviceInfo.attributes.get(key));
+			}
+		}
+		return nsdServiceInfo;
+	}
+}
@@ -22,9 +22,7 @@ import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import android.content.Context;
 import android.net.wifi.WifiManager;
@@ -110,28 +108,6 @@ public class NetUtil {
         return wifiManager;
     }   
 
-    public static Set<InetAddress> getLocalAddresses() {
-        Set<InetAddress> addresses = new HashSet<InetAddress>();
-        
-        Enumeration<NetworkInterface> networkInterfaces;
-        try {
-            networkInterfaces = NetworkInterface.getNetworkInterfaces();
-        } catch (SocketException e) {
-            Log.v(TAG, "getNetworkInterfaces(): "+e.getMessage(), e);
-            return null;
-        }
-        
-        while (networkInterfaces.hasMoreElements()) {
-            NetworkInterface networkInterface = networkInterfaces.nextElement();
-            Enumeration<InetAddress> addressEnum = networkInterface.getInetAddresses();
-            while (addressEnum.hasMoreElements()) {
-                addresses.add(addressEnum.nextElement());
-            }
-        }
-
-        return addresses;
-    }
-    
     public List<InterfaceInfo> getNetworkInformation() throws NetInfoException {
         List<InterfaceInfo> interfaceList = new ArrayList<InterfaceInfo>();
         
@@ -239,5 +215,4 @@ public class NetUtil {
         return null;
     }
 
-
 }
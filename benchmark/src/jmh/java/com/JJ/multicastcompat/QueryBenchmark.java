@@ -0,0 +1,42 @@
+package com.JJ.multicastcompat;
+
+import com.JJ.multicastcompat.benchmark.Corpus;
+import com.cafbit.netlib.dns.DNSComponent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Building query packets from precompiled questions,
+ * compare with DNSCodecBenchmark.serializeQuery.
+ */
+@State(Scope.Thread)
+public class QueryBenchmark {
+	
+	private final QueryBuilder builder = new QueryBuilder(DNSComponent.Type.PTR, 1500 - 40 - 8);
+	private final List<String> names = Arrays.asList(Corpus.SERVICE_TYPES);
+	
+	@Setup
+	public void setup() {
+		for (String name : names) {
+			builder.add(name);
+		}
+	}
+	
+	/**
+	 * Build a query for all service types of the corpus.
+	 */
+	@Benchmark
+	public int buildQuery() {
+		builder.begin();
+		for (int i = 0; i < names.size(); i++) {
+			builder.append(names.get(i));
+		}
+		return builder.finish(false);
+	}
+}
@@ -0,0 +1,91 @@
+package com.JJ.multicastcompat;
+
+import com.JJ.multicastcompat.benchmark.Corpus;
+import com.cafbit.netlib.dns.DNSMessageView;
+import com.cafbit.netlib.dns.DNSName;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Turning received packets into services.
+ */
+@State(Scope.Thread)
+public class ServiceBenchmark {
+	
+	@Param({Corpus.PRINTER, Corpus.CHROMECAST, Corpus.AIRPLAY, Corpus.HOMEKIT, Corpus.SPOTIFY})
+	public String packet;
+	
+	private byte[] bytes;
+	private final DNSMessageView view = new DNSMessageView();
+	private final Set<DNSName> browseNames = new HashSet<>();
+	private InetAddress source;
+	private MulticastServiceInfo known;
+	private MulticastServiceInfo compactKnown;
+	private MulticastServiceInfo update;
+	private MulticastServiceInfo change;
+	
+	@Setup
+	public void setup() throws UnknownHostException {
+		for (String name : Corpus.SERVICE_TYPES) {
+			browseNames.add(DNSName.of(name));
+		}
+		bytes = Corpus.get(packet);
+		source = InetAddress.getByAddress(new byte[]{(byte) 192, (byte) 168, 1, 2});
+		known = MulticastSocket.resolveServices(view.reset(bytes, 0, bytes.length), source, browseNames).get(0);
+		compactKnown = known.compact();
+		// the same service seen over IPv6
+		update = MulticastSocket.resolveServices(view.reset(bytes, 0, bytes.length), source, browseNames).get(0);
+		update.host = update.addresses.get(update.addresses.size() - 1);
+		// the same service with one changed attribute
+		change = MulticastSocket.resolveServices(view.reset(bytes, 0, bytes.length), source, browseNames).get(0);
+		change.attributes = new HashMap<>(change.attributes);
+		String key = change.attributes.keySet().iterator().next();
+		change.attributes.put(key, change.attributes.get(key) + "x");
+	}
+	
+	/**
+	 * Index a response and build the services it describes.
+	 */
+	@Benchmark
+	public List<MulticastServiceInfo> packetToServiceInfo() {
+		view.reset(bytes, 0, bytes.length);
+		return MulticastSocket.resolveServices(view, source, browseNames);
+	}
+	
+	/**
+	 * Merge a repeated announcement, which changes nothing.
+	 */
+	@Benchmark
+	public MulticastServiceInfo merge() {
+		return MulticastServiceInfo.merge(known, update);
+	}
+	
+	@Benchmark
+	public MulticastServiceInfo mergeChanged() {
+		return MulticastServiceInfo.merge(known, change);
+	}
+	
+	@Benchmark
+	public ServiceChanges diff() {
+		return MulticastServiceInfo.diff(known, update);
+	}
+	
+	/**
+	 * Compare a repeated announcement with a stored service, which has compact attributes.
+	 */
+	@Benchmark
+	public ServiceChanges diffCompact() {
+		return MulticastServiceInfo.diff(compactKnown, update);
+	}
+}
@@ -0,0 +1,115 @@
+package com.JJ.multicastcompat;
+
+import com.JJ.multicastcompat.benchmark.Corpus;
+import com.cafbit.netlib.dns.DNSMessageView;
+import com.cafbit.netlib.dns.DNSName;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The heap retained by a list of known services, reported as the bytesPerService counter.
+ * <p>
+ * The services are the corpus services in turn, each instance with its own
+ * name, hostname, address and a unique "id" attribute, like a fleet of
+ * devices of a few models. "map" keeps them the way merge() used to, with a
+ * LinkedHashMap of attributes, "compact" keeps what compact() returns.
+ * The time of this benchmark is meaningless, and the counter is summed over
+ * measurement iterations, so there is a single one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 1, time = 1, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 1, time = 1, timeUnit = TimeUnit.MILLISECONDS)
+public class ServiceFootprintBenchmark {
+	
+	@Param({"1000", "10000", "100000"})
+	public int services;
+	
+	@Param({"map", "compact"})
+	public String representation;
+	
+	private final List<MulticastServiceInfo> templates = new ArrayList<>();
+	
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Footprint {
+		public long bytesPerService;
+	}
+	
+	@Setup
+	public void setup() throws UnknownHostException {
+		Set<DNSName> browseNames = new HashSet<>();
+		for (String name : Corpus.SERVICE_TYPES) {
+			browseNames.add(DNSName.of(name));
+		}
+		InetAddress source = InetAddress.getByAddress(new byte[]{(byte) 192, (byte) 168, 1, 2});
+		for (String packet : new String[]{Corpus.PRINTER, Corpus.CHROMECAST, Corpus.AIRPLAY, Corpus.HOMEKIT, Corpus.SPOTIFY}) {
+			byte[] bytes = Corpus.get(packet);
+			templates.addAll(MulticastSocket.resolveServices(new DNSMessageView(bytes), source, browseNames));
+		}
+	}
+	
+	@Benchmark
+	public List<MulticastServiceInfo> retain(Footprint footprint) throws UnknownHostException {
+		long before = usedHeap();
+		List<MulticastServiceInfo> known = new ArrayList<>(services);
+		for (int i = 0; i < services; i++) {
+			known.add(instance(i));
+		}
+		long after = usedHeap();
+		footprint.bytesPerService = (after - before) / services;
+		return known;
+	}
+	
+	/**
+	 * Build a service like it is received, with freshly decoded strings.
+	 */
+	private MulticastServiceInfo instance(int i) throws UnknownHostException {
+		MulticastServiceInfo template = templates.get(i % templates.size());
+		MulticastServiceInfo serviceInfo = new MulticastServiceInfo(
+				template.serviceName + " " + i, new String(template.serviceType), null, template.port);
+		serviceInfo.hostname = "device-" + i + ".local";
+		serviceInfo.host = InetAddress.getByAddress(new byte[]{10, (byte) (i >>> 16), (byte) (i >>> 8), (byte) i});
+		serviceInfo.addresses = new ArrayList<>();
+		serviceInfo.addresses.add(serviceInfo.host);
+		Map<String, String> attributes = new LinkedHashMap<>();
+		for (Map.Entry<String, String> entry : template.attributes.entrySet()) {
+			attributes.put(new String(entry.getKey()), entry.getValue() == null ? null : new String(entry.getValue()));
+		}
+		attributes.put("id", Integer.toHexString(0x10000000 + i));
+		serviceInfo.attributes = attributes;
+		return representation.equals("compact") ? serviceInfo.compact() : serviceInfo;
+	}
+	
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		// collect until the heap stops shrinking
+		for (int i = 0; i < 10; i++) {
+			System.gc();
+			long now = runtime.totalMemory() - runtime.freeMemory();
+			if (now >= used) break;
+			used = now;
+		}
+		return used;
+	}
+}
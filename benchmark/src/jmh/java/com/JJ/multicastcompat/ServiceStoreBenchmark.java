@@ -0,0 +1,104 @@
+package com.JJ.multicastcompat;
+
+import com.JJ.multicastcompat.benchmark.Corpus;
+import com.cafbit.netlib.dns.DNSMessageView;
+import com.cafbit.netlib.dns.DNSName;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Querying a store of known services: the corpus services in turn, each
+ * instance with its own name and address, and one in 50 with a Color=T
+ * attribute, which the corpus printer does not have.
+ */
+@State(Scope.Benchmark)
+public class ServiceStoreBenchmark {
+	
+	@Param({"1000", "10000"})
+	public int services;
+	
+	private final ServiceStore store = new ServiceStore();
+	private MulticastServiceInfo updated;
+	
+	@Setup
+	public void setup() throws UnknownHostException {
+		Set<DNSName> browseNames = new HashSet<>();
+		for (String name : Corpus.SERVICE_TYPES) {
+			browseNames.add(DNSName.of(name));
+		}
+		InetAddress source = InetAddress.getByAddress(new byte[]{(byte) 192, (byte) 168, 1, 2});
+		List<MulticastServiceInfo> templates = new ArrayList<>();
+		for (String packet : new String[]{Corpus.PRINTER, Corpus.CHROMECAST, Corpus.AIRPLAY, Corpus.HOMEKIT, Corpus.SPOTIFY}) {
+			byte[] bytes = Corpus.get(packet);
+			templates.addAll(MulticastSocket.resolveServices(new DNSMessageView(bytes), source, browseNames));
+		}
+		for (int i = 0; i < services; i++) {
+			MulticastServiceInfo template = templates.get(i % templates.size());
+			MulticastServiceInfo serviceInfo = new MulticastServiceInfo(template.serviceName + " " + i, template.serviceType,
+					InetAddress.getByAddress(new byte[]{10, (byte) (i >>> 16), (byte) (i >>> 8), (byte) i}), template.port);
+			Map<String, String> attributes = new LinkedHashMap<>(template.attributes);
+			if (i % 50 == 0) attributes.put("Color", "T");
+			serviceInfo.attributes = attributes;
+			store.put(serviceInfo.compact());
+		}
+		updated = store.get("HP LaserJet 400 M401dne [A1B2C3] 0._ipp._tcp.local");
+	}
+	
+	/**
+	 * All color printers, through the type and attribute indexes.
+	 */
+	@Benchmark
+	public List<MulticastServiceInfo> find() {
+		return store.find("_ipp._tcp.", "Color", "T");
+	}
+	
+	/**
+	 * The same query scanning all services, like a map of services has to.
+	 */
+	@Benchmark
+	public List<MulticastServiceInfo> scan() {
+		List<MulticastServiceInfo> found = new ArrayList<>();
+		for (MulticastServiceInfo serviceInfo : store.getAll()) {
+			if (!"_ipp._tcp.".equals(serviceInfo.serviceType)) continue;
+			if ("T".equals(serviceInfo.attributes.get("Color"))) found.add(serviceInfo);
+		}
+		return found;
+	}
+	
+	@Benchmark
+	public MulticastServiceInfo get() {
+		return store.get("HP LaserJet 400 M401dne [A1B2C3] 0._ipp._tcp.local");
+	}
+	
+	/**
+	 * A service is announced again and a consumer polls for what changed.
+	 */
+	@Benchmark
+	public ServiceStore.Changes changesSince() {
+		long version = store.getVersion();
+		store.put(updated);
+		return store.changesSince(version);
+	}
+	
+	/**
+	 * The same, with a consumer which copies all services every time.
+	 */
+	@Benchmark
+	public ServiceStore.Snapshot snapshot() {
+		store.put(updated);
+		return store.snapshot();
+	}
+}
@@ -0,0 +1,265 @@
+package com.JJ.multicastcompat.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Realistic multicast DNS responses as sent by common devices.
+ * <p>
+ * Every response is laid out the way mDNSResponder and Avahi answer a
+ * browse query: the PTR record in the answer section, followed by the
+ * SRV, TXT, address and NSEC records of the instance in the additional
+ * section, with every name compressed against the names written before it.
+ */
+public final class Corpus {
+	
+	public static final String PRINTER = "printer";
+	public static final String CHROMECAST = "chromecast";
+	public static final String AIRPLAY = "airplay";
+	public static final String HOMEKIT = "homekit";
+	public static final String SPOTIFY = "spotify";
+	public static final String GOODBYE = "goodbye";
+	
+	/**
+	 * The query names of all service types in the corpus.
+	 */
+	public static final String[] SERVICE_TYPES = {
+			"_ipp._tcp.local", "_googlecast._tcp.local", "_airplay._tcp.local",
+			"_hap._tcp.local", "_spotify-connect._tcp.local",
+	};
+	
+	private static final int TYPE_A = 1;
+	private static final int TYPE_PTR = 12;
+	private static final int TYPE_TXT = 16;
+	private static final int TYPE_AAAA = 28;
+	private static final int TYPE_SRV = 33;
+	private static final int TYPE_NSEC = 47;
+	private static final int CLASS_IN = 1;
+	private static final int CACHE_FLUSH = 0x8000;
+	
+	private static final Map<String, byte[]> packets = new LinkedHashMap<>();
+	
+	static {
+		packets.put(PRINTER, service("_ipp._tcp.local", "HP LaserJet 400 M401dne [A1B2C3]", "HPA1B2C3.local", 631,
+				new byte[]{(byte) 192, (byte) 168, 1, 20},
+				new String[]{
+						"txtvers=1", "qtotal=1", "rp=ipp/print", "ty=HP LaserJet 400 M401dne",
+						"adminurl=http://HPA1B2C3.local./#hId-pgAirPrint", "note=2nd floor copy room",
+						"priority=0", "product=(HP LaserJet 400 M401dne)",
+						"pdl=application/postscript,application/vnd.hp-PCL,application/pdf,image/urf,image/pwg-raster",
+						"UUID=434e4238-3739-3146-4a4e-a0b3cca1b2c3", "URF=CP1,MT1-2-8-9-10-11,OB10,PQ4,RS600,SRGB24,V1.4,W8,DM1",
+						"Color=F", "Duplex=T", "Copies=T", "Collate=T", "Transparent=T", "Binary=T", "TLS=1.2",
+						"mopria-certified=1.3", "kind=document,envelope", "PaperMax=legal-A4",
+						"usb_MFG=Hewlett-Packard", "usb_MDL=HP LaserJet 400 M401dne", "usb_CMD=PJL,PML,POSTSCRIPT,PCLXL,PCL",
+						"Scan=F", "Fax=F", "air=none",
+				}, 4500));
+		packets.put(CHROMECAST, service("_googlecast._tcp.local", "Chromecast-Ultra-4f0a9e6b0c1d2e3f4a5b6c7d8e9f0a1b", "4f0a9e6b-0c1d-2e3f-4a5b-6c7d8e9f0a1b.local", 8009,
+				new byte[]{(byte) 192, (byte) 168, 1, 42},
+				new String[]{
+						"id=4f0a9e6b0c1d2e3f4a5b6c7d8e9f0a1b", "cd=8C1E2F3A4B5C6D7E8F9A0B1C2D3E4F50", "rm=", "ve=05",
+						"md=Chromecast Ultra", "ic=/setup/icon.png", "fn=Living Room TV", "ca=201221", "st=0",
+						"bs=FA8FCA7E8F11", "nf=1", "rs=",
+				}, 4500));
+		packets.put(AIRPLAY, service("_airplay._tcp.local", "Apple TV", "Apple-TV.local", 7000,
+				new byte[]{(byte) 192, (byte) 168, 1, 57},
+				new String[]{
+						"acl=0", "deviceid=58:55:CA:1A:2B:3C", "features=0x5A7FFFF7,0x1E", "flags=0x244",
+						"model=AppleTV5,3", "pk=b07727d6f6cd6e08b58ede525ec3cdeaa252ad9f683feb212ef8a205246554e7",
+						"pi=2e388006-13ba-4041-9a67-25dd4a43d536", "protovers=1.1", "srcvers=220.68", "vv=2",
+				}, 4500));
+		packets.put(HOMEKIT, service("_hap._tcp.local", "Eve Energy 50FF", "Eve-Energy-50FF.local", 80,
+				new byte[]{(byte) 192, (byte) 168, 1, 71},
+				new String[]{"c#=2", "ff=2", "id=5A:0C:E4:9B:1F:3D", "md=Eve Energy 20EBO8301", "pv=1.1", "s#=1", "sf=0", "ci=7", "sh=Mj8E6w=="},
+				4500));
+		packets.put(SPOTIFY, service("_spotify-connect._tcp.local", "Kitchen Speaker", "Kitchen-Speaker.local", 4070,
+				new byte[]{(byte) 192, (byte) 168, 1, 88},
+				new String[]{"CPath=/zc", "VERSION=1.0", "Stack=SP"},
+				4500));
+		packets.put(GOODBYE, goodbye("_airplay._tcp.local", "Apple TV"));
+	}
+	
+	private Corpus() {
+	}
+	
+	/**
+	 * @param name one of the corpus names, e.g. {@link #PRINTER}
+	 * @return a copy of the response
+	 */
+	public static byte[] get(String name) {
+		byte[] packet = packets.get(name);
+		if (packet == null) throw new IllegalArgumentException("unknown packet " + name);
+		return packet.clone();
+	}
+	
+	/**
+	 * @return copies of all responses
+	 */
+	public static byte[][] all() {
+		byte[][] all = new byte[packets.size()][];
+		int i = 0;
+		for (byte[] packet : packets.values()) {
+			all[i++] = packet.clone();
+		}
+		return all;
+	}
+	
+	private static byte[] service(String type, String instance, String host, int port, byte[] ipv4, String[] txt, int ttl) {
+		String instanceName = instance + "." + type;
+		byte[] ipv6 = new byte[16];
+		ipv6[0] = (byte) 0xFE;
+		ipv6[1] = (byte) 0x80;
+		System.arraycopy(ipv4, 0, ipv6, 12, 4);
+		
+		Writer writer = new Writer();
+		writer.header(1, 5);
+		// answer
+		writer.name(type);
+		writer.recordHeader(TYPE_PTR, CLASS_IN, ttl);
+		int rdata = writer.beginRdata();
+		writer.name(instanceName);
+		writer.endRdata(rdata);
+		// additional records
+		writer.name(instanceName);
+		writer.recordHeader(TYPE_SRV, CLASS_IN | CACHE_FLUSH, 120);
+		rdata = writer.beginRdata();
+		writer.u16(0);
+		writer.u16(0);
+		writer.u16(port);
+		writer.name(host);
+		writer.endRdata(rdata);
+		writer.name(instanceName);
+		writer.recordHeader(TYPE_TXT, CLASS_IN | CACHE_FLUSH, ttl);
+		rdata = writer.beginRdata();
+		for (String string : txt) {
+			byte[] bytes = utf8(string);
+			writer.u8(bytes.length);
+			writer.bytes(bytes);
+		}
+		writer.endRdata(rdata);
+		writer.name(host);
+		writer.recordHeader(TYPE_A, CLASS_IN | CACHE_FLUSH, 120);
+		rdata = writer.beginRdata();
+		writer.bytes(ipv4);
+		writer.endRdata(rdata);
+		writer.name(host);
+		writer.recordHeader(TYPE_AAAA, CLASS_IN | CACHE_FLUSH, 120);
+		rdata = writer.beginRdata();
+		writer.bytes(ipv6);
+		writer.endRdata(rdata);
+		writer.name(instanceName);
+		writer.recordHeader(TYPE_NSEC, CLASS_IN | CACHE_FLUSH, ttl);
+		rdata = writer.beginRdata();
+		writer.name(instanceName);
+		writer.u8(0); // window block
+		writer.u8(5); // bitmap length
+		writer.bytes(new byte[]{0, 0, (byte) 0x80, 0, 0x40}); // TXT, SRV
+		writer.endRdata(rdata);
+		return writer.toByteArray();
+	}
+	
+	private static byte[] goodbye(String type, String instance) {
+		Writer writer = new Writer();
+		writer.header(1, 0);
+		writer.name(type);
+		writer.recordHeader(TYPE_PTR, CLASS_IN, 0);
+		int rdata = writer.beginRdata();
+		writer.name(instance + "." + type);
+		writer.endRdata(rdata);
+		return writer.toByteArray();
+	}
+	
+	private static byte[] utf8(String string) {
+		try {
+			return string.getBytes("UTF-8");
+		} catch (java.io.UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+	
+	/**
+	 * Writes a response, compressing every name against the names written before.
+	 */
+	private static class Writer {
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		private final Map<String, Integer> suffixes = new HashMap<>();
+		
+		void header(int answers, int additionals) {
+			u16(0); // id
+			u16(0x8400); // response, authoritative
+			u16(0);
+			u16(answers);
+			u16(0);
+			u16(additionals);
+		}
+		
+		void recordHeader(int type, int rclass, int ttl) {
+			u16(type);
+			u16(rclass);
+			u16(ttl >>> 16);
+			u16(ttl & 0xFFFF);
+		}
+		
+		int beginRdata() {
+			int offset = out.size();
+			u16(0);
+			return offset;
+		}
+		
+		void endRdata(int offset) {
+			byte[] bytes = out.toByteArray();
+			int length = bytes.length - offset - 2;
+			bytes[offset] = (byte) (length >>> 8);
+			bytes[offset + 1] = (byte) length;
+			out.reset();
+			out.write(bytes, 0, bytes.length);
+		}
+		
+		void name(String name) {
+			String rest = name;
+			while (!rest.isEmpty()) {
+				Integer pointer = suffixes.get(rest.toLowerCase(Locale.US));
+				if (pointer != null) {
+					u16(0xC000 | pointer);
+					return;
+				}
+				suffixes.put(rest.toLowerCase(Locale.US), out.size());
+				int dot = labelEnd(rest);
+				byte[] label = utf8(rest.substring(0, dot));
+				u8(label.length);
+				bytes(label);
+				rest = dot < rest.length() ? rest.substring(dot + 1) : "";
+			}
+			u8(0);
+		}
+		
+		/**
+		 * Instance names may contain dots, only the service type and domain are split.
+		 */
+		private int labelEnd(String name) {
+			int underscore = name.indexOf("._");
+			if (underscore > 0) return underscore;
+			int dot = name.indexOf('.');
+			return dot == -1 ? name.length() : dot;
+		}
+		
+		void u8(int value) {
+			out.write(value);
+		}
+		
+		void u16(int value) {
+			out.write(value >>> 8);
+			out.write(value);
+		}
+		
+		void bytes(byte[] bytes) {
+			out.write(bytes, 0, bytes.length);
+		}
+		
+		byte[] toByteArray() {
+			return out.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package com.cafbit.netlib.dns;
+
+import com.JJ.multicastcompat.benchmark.Corpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decoding the key=value pairs of TXT records.
+ * The printer TXT record carries 27 pairs in about 800 bytes.
+ */
+@State(Scope.Thread)
+public class DNSAttributesBenchmark {
+	
+	@Param({Corpus.PRINTER, Corpus.CHROMECAST, Corpus.SPOTIFY})
+	public String packet;
+	
+	private DNSAnswer txt;
+	private DNSMessageView view;
+	private int txtIndex;
+	private String key;
+	
+	@Setup
+	public void setup() {
+		byte[] bytes = Corpus.get(packet);
+		view = new DNSMessageView(bytes);
+		txtIndex = view.findRecord(DNSComponent.Type.TXT.qtype, 0);
+		txt = new DNSAnswer(view, txtIndex);
+		Map<String, String> attributes = txt.getAttributes();
+		key = attributes.keySet().iterator().next();
+	}
+	
+	@Benchmark
+	public Map<String, String> getAttributes() {
+		return txt.getAttributes();
+	}
+	
+	/**
+	 * Decode the attributes straight from the receive buffer.
+	 */
+	@Benchmark
+	public Map<String, String> readAttributes() {
+		Map<String, String> attributes = new HashMap<>();
+		view.readAttributes(txtIndex, attributes);
+		return attributes;
+	}
+	
+	/**
+	 * Index the TXT record without decoding any value.
+	 */
+	@Benchmark
+	public DNSTextRecord getTextRecord() {
+		return view.getTextRecord(txtIndex);
+	}
+	
+	/**
+	 * Index the TXT record and decode a single value, the usual access pattern.
+	 */
+	@Benchmark
+	public String getTextRecordValue() {
+		return view.getTextRecord(txtIndex).get(key);
+	}
+}
@@ -0,0 +1,71 @@
+package com.cafbit.netlib.dns;
+
+import com.JJ.multicastcompat.benchmark.Corpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parsing and serializing DNS messages.
+ */
+@State(Scope.Thread)
+public class DNSCodecBenchmark {
+	
+	@Param({Corpus.PRINTER, Corpus.CHROMECAST, Corpus.AIRPLAY, Corpus.HOMEKIT, Corpus.SPOTIFY, Corpus.GOODBYE})
+	public String packet;
+	
+	private byte[] bytes;
+	private final DNSMessageView view = new DNSMessageView();
+	private List<DNSQuestion> questions;
+	
+	@Setup
+	public void setup() {
+		bytes = Corpus.get(packet);
+		questions = new ArrayList<>();
+		for (String type : Corpus.SERVICE_TYPES) {
+			questions.add(new DNSQuestion(DNSComponent.Type.PTR, type));
+		}
+	}
+	
+	/**
+	 * Parse a response into a fully materialized message.
+	 */
+	@Benchmark
+	public DNSMessage parse() {
+		return new DNSMessage(bytes);
+	}
+	
+	/**
+	 * Index a response in place without decoding any name.
+	 */
+	@Benchmark
+	public int index() {
+		return view.reset(bytes, 0, bytes.length).getRecordCount();
+	}
+	
+	/**
+	 * Parse a response and decode everything which is needed to build a service from it.
+	 */
+	@Benchmark
+	public Map<String, String> parseAndDecode() {
+		DNSMessage message = new DNSMessage(bytes);
+		message.getPTR();
+		return message.getAttributes();
+	}
+	
+	/**
+	 * Serialize a query for all service types of the corpus.
+	 * Only questions are measured, as records can not be serialized yet.
+	 */
+	@Benchmark
+	public byte[] serializeQuery() {
+		return new DNSMessage(questions).serialize();
+	}
+}
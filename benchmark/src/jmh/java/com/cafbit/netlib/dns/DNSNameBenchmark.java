@@ -0,0 +1,73 @@
+package com.cafbit.netlib.dns;
+
+import com.JJ.multicastcompat.benchmark.Corpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Decoding names with and without compression pointers, looking up
+ * their interned form and rejecting a name whose compression pointer loops.
+ */
+@State(Scope.Thread)
+public class DNSNameBenchmark {
+	
+	private DNSBuffer buffer;
+	// "_ipp._tcp.local" written out label by label
+	private int plainOffset;
+	// the SRV owner, a pointer to the instance label followed by a pointer to "_ipp._tcp.local"
+	private int compressedOffset;
+	// a label followed by a pointer back to itself
+	private final DNSBuffer loop = new DNSBuffer(new byte[]{4, 'l', 'o', 'o', 'p', (byte) 0xC0, 0});
+	
+	@Setup
+	public void setup() {
+		byte[] bytes = Corpus.get(Corpus.PRINTER);
+		DNSMessageView view = new DNSMessageView(bytes);
+		plainOffset = view.getRecordOffset(0);
+		compressedOffset = view.getRecordOffset(view.findRecord(DNSComponent.Type.SRV.qtype, 0));
+		buffer = new DNSBuffer(bytes);
+	}
+	
+	@Benchmark
+	public String readName() {
+		// every read counts against the label budget of the message
+		buffer.reset();
+		buffer.offset = plainOffset;
+		return buffer.readName();
+	}
+	
+	@Benchmark
+	public String readCompressedName() {
+		buffer.reset();
+		buffer.offset = compressedOffset;
+		return buffer.readName();
+	}
+	
+	@Benchmark
+	public DNSName readDNSName() {
+		buffer.reset();
+		buffer.offset = plainOffset;
+		return buffer.readDNSName();
+	}
+	
+	@Benchmark
+	public DNSName readCompressedDNSName() {
+		buffer.reset();
+		buffer.offset = compressedOffset;
+		return buffer.readDNSName();
+	}
+	
+	@Benchmark
+	public DNSException rejectPointerLoop() {
+		loop.reset();
+		try {
+			loop.readName();
+			return null;
+		} catch (DNSException e) {
+			return e;
+		}
+	}
+}
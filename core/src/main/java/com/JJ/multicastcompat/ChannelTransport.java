@@ -0,0 +1,196 @@
+package com.JJ.multicastcompat;
+
+import com.cafbit.netlib.InterfaceUtil;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.ProtocolFamily;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A transport multiplexing non-blocking DatagramChannels with a single Selector,
+ * so that any number of interfaces is served by one thread.
+ * <p>
+ * There is one channel per address family, which joins its group on all
+ * interfaces. One socket per interface would receive each packet once per
+ * socket on Linux, because multicast memberships are not bound to the
+ * socket which joined them.
+ * <p>
+ * Joining multicast groups with a DatagramChannel requires Android API level 24.
+ */
+class ChannelTransport implements MulticastTransport {
+	
+	private final List<NetworkInterface> interfaces;
+	private final List<InetAddress> groups;
+	private final int port;
+	private final int ttl;
+	private final List<Channel> channels = new ArrayList<>();
+	// wraps the array of the last sent packet, senders reuse their buffer
+	private ByteBuffer sendBuffer;
+	private Selector selector;
+	
+	ChannelTransport(List<NetworkInterface> interfaces, List<InetAddress> groups, int port, int ttl) {
+		this.interfaces = interfaces;
+		this.groups = groups;
+		this.port = port;
+		this.ttl = ttl;
+	}
+	
+	@Override
+	public void open() throws IOException {
+		selector = Selector.open();
+		IOException failure = null;
+		for (InetAddress group : groups) {
+			Channel channel;
+			try {
+				channel = openChannel(group);
+			} catch (IOException e) {
+				// e.g. no IPv6 on this host, continue with the other groups
+				failure = e;
+				continue;
+			}
+			if (channel != null) channels.add(channel);
+		}
+		if (channels.isEmpty()) {
+			throw new IOException("could not join any multicast group", failure);
+		}
+	}
+	
+	/**
+	 * Open a channel and join the group on all interfaces of its family.
+	 * The channel is closed again if this fails, as close() only knows the channels which have been opened.
+	 *
+	 * @return the channel, or null if the group could not be joined on any interface
+	 */
+	private Channel openChannel(InetAddress group) throws IOException {
+		boolean ipv6 = group instanceof Inet6Address;
+		ProtocolFamily family = ipv6 ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET;
+		InetAddress wildcard = InetAddress.getByName(ipv6 ? "::" : "0.0.0.0");
+		
+		DatagramChannel datagramChannel = DatagramChannel.open(family);
+		try {
+			Channel channel = new Channel(datagramChannel, new InetSocketAddress(group, port), ipv6);
+			datagramChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+			datagramChannel.bind(new InetSocketAddress(wildcard, port));
+			datagramChannel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, ttl);
+			for (NetworkInterface networkInterface : interfaces) {
+				if (!InterfaceUtil.hasAddressOfFamily(networkInterface, group)) continue;
+				try {
+					datagramChannel.join(group, networkInterface);
+				} catch (IOException e) {
+					// e.g. IPv6 disabled on this interface, continue with the others
+					continue;
+				}
+				channel.interfaces.add(networkInterface);
+			}
+			if (channel.interfaces.isEmpty()) {
+				datagramChannel.close();
+				return null;
+			}
+			datagramChannel.configureBlocking(false);
+			datagramChannel.register(selector, SelectionKey.OP_READ);
+			return channel;
+		} catch (IOException | RuntimeException e) {
+			datagramChannel.close();
+			throw e;
+		}
+	}
+	
+	@Override
+	public NetworkInterface receive(DatagramPacket packet, long timeout) throws IOException {
+		// like a closed socket, fail with an IOException instead of a ClosedSelectorException
+		if (isClosed()) throw new ClosedChannelException();
+		ByteBuffer buffer = ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getData().length - packet.getOffset());
+		long deadline = System.nanoTime() / 1000000 + timeout;
+		while (true) {
+			for (Channel channel : channels) {
+				InetSocketAddress source = (InetSocketAddress) channel.channel.receive(buffer);
+				if (source == null) continue;
+				if (channel.ipv6 && source.getAddress() instanceof Inet4Address) {
+					// a dual-stack socket also sees the packets of the IPv4 channel
+					buffer.position(packet.getOffset());
+					continue;
+				}
+				packet.setLength(buffer.position() - packet.getOffset());
+				packet.setSocketAddress(source);
+				return InterfaceUtil.findInterface(packet.getAddress(), channel.interfaces);
+			}
+			long remaining = deadline - System.nanoTime() / 1000000;
+			if (remaining <= 0) {
+				throw new SocketTimeoutException();
+			}
+			// return early when woken up, so the caller can check whether to stop
+			if (selector.select(remaining) == 0) {
+				throw new SocketTimeoutException();
+			}
+			selector.selectedKeys().clear();
+		}
+	}
+	
+	@Override
+	public void send(byte[] data, int length) throws IOException {
+		if (sendBuffer == null || sendBuffer.array() != data) sendBuffer = ByteBuffer.wrap(data);
+		for (int i = 0; i < channels.size(); i++) {
+			Channel channel = channels.get(i);
+			for (int j = 0; j < channel.interfaces.size(); j++) {
+				channel.channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, channel.interfaces.get(j));
+				sendBuffer.limit(length).position(0);
+				channel.channel.send(sendBuffer, channel.group);
+			}
+		}
+	}
+	
+	@Override
+	public void wakeup() {
+		if (selector != null) selector.wakeup();
+	}
+	
+	@Override
+	public void close() {
+		for (Channel channel : channels) {
+			try {
+				channel.channel.close();
+			} catch (IOException ignored) {
+			}
+		}
+		channels.clear();
+		if (selector != null) {
+			try {
+				selector.close();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+	
+	@Override
+	public boolean isClosed() {
+		return selector == null || !selector.isOpen();
+	}
+	
+	private static class Channel {
+		final DatagramChannel channel;
+		final InetSocketAddress group;
+		final boolean ipv6;
+		final List<NetworkInterface> interfaces = new ArrayList<>();
+		
+		Channel(DatagramChannel channel, InetSocketAddress group, boolean ipv6) {
+			this.channel = channel;
+			this.group = group;
+			this.ipv6 = ipv6;
+		}
+	}
+}
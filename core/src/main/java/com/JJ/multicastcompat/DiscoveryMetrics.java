@@ -0,0 +1,186 @@
+package com.JJ.multicastcompat;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A snapshot of the counters and latencies of a discovery engine.
+ * <p>
+ * Counters start at zero when the engine is created and only ever grow,
+ * so a registry should report their rate rather than their value.
+ * All latencies are measured with a monotonic clock.
+ *
+ * @see MulticastEngine#getMetrics()
+ * @see MetricsReporter
+ */
+public class DiscoveryMetrics {
+	/**
+	 * the occupancy of the packet pipeline, the rejected, dropped and failed packets
+	 */
+	public final PipelineStatistics pipeline;
+	/**
+	 * datagrams read from the network, including rejected ones and our own queries
+	 */
+	public final long packetsReceived;
+	/**
+	 * query packets sent
+	 */
+	public final long packetsSent;
+	/**
+	 * the time it takes to index a packet and build the services described by it
+	 */
+	public final Histogram parseLatency;
+	/**
+	 * the time from receiving a packet until a listener is called with a service from it
+	 */
+	public final Histogram callbackLatency;
+	/**
+	 * records currently cached
+	 */
+	public final int cacheSize;
+	/**
+	 * received records which were already cached
+	 */
+	public final long cacheHits;
+	/**
+	 * received records which were not cached yet
+	 */
+	public final long cacheMisses;
+	/**
+	 * records removed from the cache because they expired, were flushed or said goodbye
+	 */
+	public final long cacheEvictions;
+	private final Map<String, TypeMetrics> types;
+	
+	DiscoveryMetrics(PipelineStatistics pipeline, long packetsReceived, long packetsSent,
+	                 Histogram parseLatency, Histogram callbackLatency,
+	                 int cacheSize, long cacheHits, long cacheMisses, long cacheEvictions,
+	                 Map<String, TypeMetrics> types) {
+		this.pipeline = pipeline;
+		this.packetsReceived = packetsReceived;
+		this.packetsSent = packetsSent;
+		this.parseLatency = parseLatency;
+		this.callbackLatency = callbackLatency;
+		this.cacheSize = cacheSize;
+		this.cacheHits = cacheHits;
+		this.cacheMisses = cacheMisses;
+		this.cacheEvictions = cacheEvictions;
+		this.types = Collections.unmodifiableMap(types);
+	}
+	
+	/**
+	 * @return the metrics of every browsed service type by its query name, e.g. "_ipp._tcp.local"
+	 */
+	public Map<String, TypeMetrics> getTypes() {
+		return types;
+	}
+	
+	@Override
+	public String toString() {
+		return "received=" + packetsReceived + " sent=" + packetsSent
+				+ " parse=" + parseLatency + " callback=" + callbackLatency
+				+ " cache=" + cacheSize + " hits=" + cacheHits + " misses=" + cacheMisses
+				+ " evictions=" + cacheEvictions + " types=" + types + " " + pipeline;
+	}
+	
+	/**
+	 * The query statistics of a browsed service type.
+	 */
+	public static class TypeMetrics {
+		/**
+		 * queries sent for this type, including cache refresh queries
+		 */
+		public final long queries;
+		/**
+		 * queries not sent, as another host asked the same question or a responder sent the answers anyway
+		 */
+		public final long suppressedQueries;
+		/**
+		 * milliseconds from the first query until the first service of this type was found,
+		 * or -1 if none has been found yet
+		 */
+		public final long firstAnswerMillis;
+		
+		TypeMetrics(long queries, long suppressedQueries, long firstAnswerMillis) {
+			this.queries = queries;
+			this.suppressedQueries = suppressedQueries;
+			this.firstAnswerMillis = firstAnswerMillis;
+		}
+		
+		@Override
+		public String toString() {
+			return "queries=" + queries + " suppressed=" + suppressedQueries + " firstAnswer=" + firstAnswerMillis + "ms";
+		}
+	}
+	
+	/**
+	 * A latency histogram with exponentially growing buckets.
+	 * Bucket 0 counts durations below one microsecond, bucket i &gt; 0 counts durations
+	 * from 2^(i-1) up to 2^i microseconds and the last bucket everything longer.
+	 */
+	public static class Histogram {
+		private final long[] buckets;
+		private final long count;
+		private final long totalNanos;
+		
+		Histogram(long[] buckets, long totalNanos) {
+			this.buckets = buckets;
+			this.totalNanos = totalNanos;
+			long count = 0;
+			for (long bucket : buckets) {
+				count += bucket;
+			}
+			this.count = count;
+		}
+		
+		public long getCount() {
+			return count;
+		}
+		
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+		
+		public long getMeanNanos() {
+			return count == 0 ? 0 : totalNanos / count;
+		}
+		
+		public int getBucketCount() {
+			return buckets.length;
+		}
+		
+		public long getBucket(int bucket) {
+			return buckets[bucket];
+		}
+		
+		/**
+		 * @return the exclusive upper bound of a bucket in nanoseconds, Long.MAX_VALUE for the last bucket
+		 */
+		public long getUpperBoundNanos(int bucket) {
+			if (bucket >= buckets.length - 1) return Long.MAX_VALUE;
+			return (1L << bucket) * 1000;
+		}
+		
+		/**
+		 * Estimate a percentile by the upper bound of the bucket it falls into.
+		 *
+		 * @param percentile between 0 and 100
+		 * @return the upper bound in nanoseconds, or 0 if nothing has been recorded
+		 */
+		public long getPercentileNanos(double percentile) {
+			if (count == 0) return 0;
+			long rank = (long) Math.ceil(count * percentile / 100);
+			long seen = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				seen += buckets[i];
+				if (seen >= rank && seen > 0) return getUpperBoundNanos(i);
+			}
+			return Long.MAX_VALUE;
+		}
+		
+		@Override
+		public String toString() {
+			return "{count=" + count + " mean=" + getMeanNanos() / 1000 + "us p99<" + getPercentileNanos(99) / 1000 + "us}";
+		}
+	}
+}
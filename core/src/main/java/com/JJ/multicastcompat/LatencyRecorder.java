@@ -0,0 +1,34 @@
+package com.JJ.multicastcompat;
+
+/**
+ * Records durations into a histogram of exponentially growing buckets.
+ * <p>
+ * Bucket i counts durations below 2^i microseconds which do not fit into
+ * bucket i - 1, the last bucket also takes everything longer. Recording is
+ * as cheap as incrementing two striped counters.
+ *
+ * @see DiscoveryMetrics.Histogram
+ */
+class LatencyRecorder {
+	
+	static final int BUCKETS = 26;
+	
+	private static final int SUM = BUCKETS;
+	
+	private final StripedCounters counters = new StripedCounters(BUCKETS + 1);
+	
+	void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+		long micros = nanos / 1000;
+		int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+		counters.increment(bucket);
+		counters.add(SUM, nanos);
+	}
+	
+	DiscoveryMetrics.Histogram snapshot() {
+		long[] sums = counters.sums();
+		long[] buckets = new long[BUCKETS];
+		System.arraycopy(sums, 0, buckets, 0, BUCKETS);
+		return new DiscoveryMetrics.Histogram(buckets, sums[SUM]);
+	}
+}
@@ -0,0 +1,126 @@
+package com.JJ.multicastcompat;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the counters and latencies of a multicast socket.
+ * <p>
+ * The per packet methods are called from the receive thread and the pipeline
+ * workers; they only add to striped counters and never allocate.
+ */
+class MetricsRecorder {
+	
+	private static final int RECEIVED = 0;
+	private static final int SENT = 1;
+	
+	private final StripedCounters counters = new StripedCounters(2);
+	private final LatencyRecorder parseLatency = new LatencyRecorder();
+	private final LatencyRecorder callbackLatency = new LatencyRecorder();
+	// by lower case query name, e.g. "_ipp._tcp.local"
+	private final Map<String, TypeRecorder> types = new ConcurrentHashMap<>();
+	// the number of types which have been queried for but not answered yet
+	private final AtomicInteger unanswered = new AtomicInteger();
+	
+	void packetReceived() {
+		counters.increment(RECEIVED);
+	}
+	
+	void packetSent() {
+		counters.increment(SENT);
+	}
+	
+	void parsed(long nanos) {
+		parseLatency.record(nanos);
+	}
+	
+	/**
+	 * @param nanos the time from receiving a packet until a listener is called with a service from it
+	 */
+	void callback(long nanos) {
+		callbackLatency.record(nanos);
+	}
+	
+	void addType(String name) {
+		unanswered.incrementAndGet();
+		TypeRecorder previous = types.put(name, new TypeRecorder());
+		if (previous != null) previous.remove();
+	}
+	
+	void removeType(String name) {
+		TypeRecorder type = types.remove(name);
+		if (type != null) type.remove();
+	}
+	
+	void clearTypes() {
+		for (String name : types.keySet()) {
+			removeType(name);
+		}
+	}
+	
+	void queried(String name, long nanos) {
+		TypeRecorder type = types.get(name);
+		if (type == null) return;
+		type.queries.incrementAndGet();
+		type.firstQuery.compareAndSet(0, nanos);
+	}
+	
+	/**
+	 * A query for the type was not sent, as another host has sent it for us.
+	 */
+	void suppressed(String name) {
+		TypeRecorder type = types.get(name);
+		if (type == null) return;
+		type.suppressed.incrementAndGet();
+	}
+	
+	/**
+	 * @return whether answered() needs to be called at all
+	 */
+	boolean awaitingAnswers() {
+		return unanswered.get() > 0;
+	}
+	
+	void answered(String name, long nanos) {
+		TypeRecorder type = types.get(name);
+		if (type == null) return;
+		long firstQuery = type.firstQuery.get();
+		if (firstQuery == 0) return;
+		if (type.firstAnswer.compareAndSet(-1, Math.max(0, nanos - firstQuery))) {
+			type.remove();
+		}
+	}
+	
+	DiscoveryMetrics snapshot(PipelineStatistics pipeline, int cacheSize, long cacheHits, long cacheMisses, long cacheEvictions) {
+		Map<String, DiscoveryMetrics.TypeMetrics> types = new LinkedHashMap<>();
+		for (Map.Entry<String, TypeRecorder> entry : this.types.entrySet()) {
+			TypeRecorder type = entry.getValue();
+			long firstAnswer = type.firstAnswer.get();
+			types.put(entry.getKey(), new DiscoveryMetrics.TypeMetrics(type.queries.get(), type.suppressed.get(),
+					firstAnswer == -1 ? -1 : firstAnswer / 1000000));
+		}
+		return new DiscoveryMetrics(pipeline, counters.sum(RECEIVED), counters.sum(SENT),
+				parseLatency.snapshot(), callbackLatency.snapshot(),
+				cacheSize, cacheHits, cacheMisses, cacheEvictions, types);
+	}
+	
+	private class TypeRecorder {
+		final AtomicLong queries = new AtomicLong();
+		final AtomicLong suppressed = new AtomicLong();
+		// monotonic nanos of the first query, 0 until it has been sent
+		final AtomicLong firstQuery = new AtomicLong();
+		// nanos from the first query until the first answer, -1 until answered
+		final AtomicLong firstAnswer = new AtomicLong(-1);
+		// whether this type is included in unanswered
+		private boolean counted = true;
+		
+		synchronized void remove() {
+			if (!counted) return;
+			counted = false;
+			unanswered.decrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,11 @@
+package com.JJ.multicastcompat;
+
+/**
+ * Receives the metrics of a discovery engine periodically, e.g. to push them into
+ * a metrics registry. Called on a pipeline worker thread while discovery is running.
+ *
+ * @see MulticastEngine#setMetricsReporter(MetricsReporter, long)
+ */
+public interface MetricsReporter {
+	void report(DiscoveryMetrics metrics);
+}
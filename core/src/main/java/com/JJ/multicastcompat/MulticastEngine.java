@@ -0,0 +1,255 @@
+package com.JJ.multicastcompat;
+
+import com.JJ.multicastcompat.spi.Platform;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A process wide discovery engine, shared by all MulticastCompat instances on Android.
+ * <p>
+ * The engine owns the only MulticastSocket thread (one per interface mode),
+ * so every packet is received, parsed and cached once no matter how many
+ * MulticastCompat handles exist. Handles subscribe to service types with a
+ * listener; a service type is only queried for while at least one handle
+ * is subscribed to it, and the found services are fanned out to every
+ * subscribed listener.
+ * <p>
+ * Engines are reference counted: {@link #acquire(Platform, boolean)} starts
+ * the thread with the first reference and {@link #release()} ends it with
+ * the last one.
+ */
+public class MulticastEngine {
+	
+	/**
+	 * What to do with a received packet when the packet queue is full.
+	 */
+	public enum DropPolicy {
+		/**
+		 * Drop the oldest queued packet to make room for a newly received one.
+		 */
+		DROP_OLDEST,
+		/**
+		 * Drop newly received packets while the queue is full.
+		 */
+		DROP_NEWEST
+	}
+	
+	private static final Map<Boolean, MulticastEngine> engines = new HashMap<>();
+	// pipeline configuration of engines created from now on, guarded by engines
+	private static int workers = PacketPipeline.DEFAULT_WORKERS;
+	private static int queueCapacity = PacketPipeline.DEFAULT_QUEUE_CAPACITY;
+	private static DropPolicy dropPolicy = DropPolicy.DROP_OLDEST;
+	
+	private final boolean allInterfaces;
+	private final MulticastSocket multicastSocket;
+	private int references = 0;
+	// serializes starting and stopping queries, never held while dispatching
+	private final Object controlLock = new Object();
+	// subscribed listeners by lower case query name, e.g. "_ipp._tcp.local"
+	private final Map<String, List<MulticastListener>> subscriptions = new ConcurrentHashMap<>();
+	// services found for each query name, replayed to late subscribers
+	private final Map<String, Map<String, MulticastServiceInfo>> services = new HashMap<>();
+	
+	private MulticastEngine(Platform platform, boolean allInterfaces) {
+		this.allInterfaces = allInterfaces;
+		multicastSocket = new MulticastSocket(platform, new MulticastListener() {
+			@Override
+			public void onServiceFound(MulticastServiceInfo serviceInfo) {
+				dispatchServiceFound(serviceInfo);
+			}
+			
+			@Override
+			public void onServiceLost(MulticastServiceInfo serviceInfo) {
+				dispatchServiceLost(serviceInfo);
+			}
+		}, allInterfaces, workers, queueCapacity, dropPolicy);
+	}
+	
+	/**
+	 * Configure the packet pipeline of engines which are created afterwards.
+	 * A running engine keeps its configuration until its last reference is released.
+	 */
+	public static void configure(int workers, int queueCapacity, DropPolicy dropPolicy) {
+		if (workers < 1) throw new IllegalArgumentException("at least one worker is needed");
+		if (queueCapacity < 1) throw new IllegalArgumentException("queue capacity must be positive");
+		if (dropPolicy == null) throw new NullPointerException();
+		synchronized (engines) {
+			MulticastEngine.workers = workers;
+			MulticastEngine.queueCapacity = queueCapacity;
+			MulticastEngine.dropPolicy = dropPolicy;
+		}
+	}
+	
+	/**
+	 * Get the shared engine, creating and starting it if this is the first reference.
+	 * The platform is only used when the engine is created, later references share it.
+	 *
+	 * @param platform      the network integration of the host platform, e.g. {@link com.JJ.multicastcompat.spi.DefaultPlatform}
+	 * @param allInterfaces whether the engine should listen on every eligible network interface
+	 */
+	public static MulticastEngine acquire(Platform platform, boolean allInterfaces) {
+		synchronized (engines) {
+			MulticastEngine engine = engines.get(allInterfaces);
+			if (engine == null) {
+				engine = new MulticastEngine(platform, allInterfaces);
+				engine.multicastSocket.start();
+				engines.put(allInterfaces, engine);
+			}
+			engine.references++;
+			return engine;
+		}
+	}
+	
+	/**
+	 * Drop a reference obtained by acquire().
+	 * The last reference stops discovery and terminates the thread.
+	 */
+	public void release() {
+		synchronized (engines) {
+			if (references == 0) return;
+			if (--references > 0) return;
+			engines.remove(allInterfaces);
+		}
+		synchronized (this) {
+			subscriptions.clear();
+			services.clear();
+		}
+		multicastSocket.end();
+	}
+	
+	/**
+	 * Subscribe a listener to a service type.
+	 * The first subscription of a service type starts querying for it,
+	 * services already found for it are reported to the listener right away.
+	 *
+	 * @param serviceType the service type, e.g. "_ipp._tcp."
+	 */
+	public void subscribe(String serviceType, MulticastListener listener) throws IOException {
+		String name = MulticastSocket.toQueryName(serviceType);
+		List<String> known;
+		synchronized (controlLock) {
+			boolean first;
+			synchronized (this) {
+				List<MulticastListener> listeners = subscriptions.get(name);
+				if (listeners == null) {
+					listeners = new CopyOnWriteArrayList<>();
+					subscriptions.put(name, listeners);
+				}
+				if (listeners.contains(listener)) return;
+				listeners.add(listener);
+				first = listeners.size() == 1;
+				Map<String, MulticastServiceInfo> found = services.get(name);
+				known = found == null ? new ArrayList<String>() : new ArrayList<>(found.keySet());
+			}
+			if (first) multicastSocket.discoverServices(serviceType);
+		}
+		for (String key : known) {
+			// a service lost meanwhile has been reported to the listener already,
+			// so it must not be found afterwards. holding the lock orders this with dispatchServiceLost
+			synchronized (this) {
+				List<MulticastListener> listeners = subscriptions.get(name);
+				if (listeners == null || !listeners.contains(listener)) return;
+				Map<String, MulticastServiceInfo> found = services.get(name);
+				MulticastServiceInfo serviceInfo = found == null ? null : found.get(key);
+				if (serviceInfo != null) listener.onServiceFound(serviceInfo);
+			}
+		}
+	}
+	
+	/**
+	 * Remove a listener from a service type.
+	 * Querying for the service type stops with its last subscription.
+	 */
+	public void unsubscribe(String serviceType, MulticastListener listener) {
+		String name = MulticastSocket.toQueryName(serviceType);
+		synchronized (controlLock) {
+			synchronized (this) {
+				List<MulticastListener> listeners = subscriptions.get(name);
+				if (listeners == null || !listeners.remove(listener)) return;
+				if (!listeners.isEmpty()) return;
+				subscriptions.remove(name);
+				services.remove(name);
+			}
+			multicastSocket.stopServiceDiscovery(serviceType);
+		}
+	}
+	
+	/**
+	 * Remove a listener from all service types it is subscribed to.
+	 */
+	public void unsubscribe(MulticastListener listener) {
+		List<String> names;
+		synchronized (this) {
+			names = new ArrayList<>(subscriptions.keySet());
+		}
+		for (String name : names) {
+			unsubscribe(name, listener);
+		}
+	}
+	
+	public PipelineStatistics getPipelineStatistics() {
+		return multicastSocket.getPipelineStatistics();
+	}
+	
+	/**
+	 * @return the packet, cache and query counters and the latencies of this engine
+	 */
+	public DiscoveryMetrics getMetrics() {
+		return multicastSocket.getMetrics();
+	}
+	
+	/**
+	 * Push the metrics to a reporter periodically while discovery is running,
+	 * e.g. to feed them into a metrics registry.
+	 *
+	 * @param reporter       the reporter, or null to stop reporting
+	 * @param intervalMillis the reporting interval
+	 */
+	public void setMetricsReporter(MetricsReporter reporter, long intervalMillis) {
+		multicastSocket.setMetricsReporter(reporter, intervalMillis);
+	}
+	
+	private void dispatchServiceFound(MulticastServiceInfo serviceInfo) {
+		if (serviceInfo.serviceType == null) return;
+		String name = MulticastSocket.toQueryName(serviceInfo.serviceType);
+		List<MulticastListener> listeners = subscriptions.get(name);
+		if (listeners == null) return;
+		synchronized (this) {
+			// the last subscriber might just have left
+			if (!subscriptions.containsKey(name)) return;
+			Map<String, MulticastServiceInfo> found = services.get(name);
+			if (found == null) {
+				found = new LinkedHashMap<>();
+				services.put(name, found);
+			}
+			String key = String.valueOf(serviceInfo.serviceName);
+			MulticastServiceInfo known = found.get(key);
+			MulticastServiceInfo merged = MulticastServiceInfo.merge(known, serviceInfo);
+			if (merged != known) found.put(key, merged.compact());
+		}
+		for (MulticastListener listener : listeners) {
+			listener.onServiceFound(serviceInfo);
+		}
+	}
+	
+	private void dispatchServiceLost(MulticastServiceInfo serviceInfo) {
+		if (serviceInfo.serviceType == null) return;
+		String name = MulticastSocket.toQueryName(serviceInfo.serviceType);
+		List<MulticastListener> listeners = subscriptions.get(name);
+		if (listeners == null) return;
+		synchronized (this) {
+			Map<String, MulticastServiceInfo> found = services.get(name);
+			if (found != null) found.remove(String.valueOf(serviceInfo.serviceName));
+		}
+		for (MulticastListener listener : listeners) {
+			listener.onServiceLost(serviceInfo);
+		}
+	}
+}
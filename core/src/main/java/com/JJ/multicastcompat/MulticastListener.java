@@ -0,0 +1,11 @@
+package com.JJ.multicastcompat;
+
+/**
+ * Receives the services found and lost by a {@link MulticastEngine} subscription.
+ * Callbacks are invoked on the engine's worker threads.
+ */
+public interface MulticastListener {
+	void onServiceFound(MulticastServiceInfo serviceInfo);
+	
+	void onServiceLost(MulticastServiceInfo serviceInfo);
+}
@@ -0,0 +1,213 @@
+package com.JJ.multicastcompat;
+
+import com.cafbit.netlib.dns.DNSTextRecord;
+
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class MulticastServiceInfo {
+	public int port = 0;
+	public InetAddress host;
+	public String hostname;
+	public List<InetAddress> addresses;
+	public NetworkInterface networkInterface;
+	public String serviceName;
+	public String serviceType;
+	/**
+	 * The TXT attributes, boolean attributes map to null.
+	 */
+	public Map<String, String> attributes;
+	/**
+	 * Whether attributes is a whole TXT record announced with the cache-flush bit,
+	 * which replaces the known attributes instead of being merged into them.
+	 * see: https://tools.ietf.org/html/rfc6762 section 10.2
+	 */
+	public boolean attributesComplete;
+	/**
+	 * Whether addresses are all current addresses of the host, which replace
+	 * the known addresses instead of being merged into them, e.g. after one of them expired.
+	 */
+	public boolean addressesComplete;
+	
+	public MulticastServiceInfo() {
+	}
+	
+	public MulticastServiceInfo(String serviceName, String serviceType, InetAddress host, int port) {
+		this.serviceName = serviceName;
+		this.serviceType = serviceType;
+		this.host = host;
+		this.port = port;
+	}
+	
+	/**
+	 * Merge two MulticastServiceInfo objects, preferring values from serviceInfo2.
+	 * The addresses and attributes of both objects are combined, unless serviceInfo2
+	 * carries {@link #addressesComplete complete addresses} or a
+	 * {@link #attributesComplete complete TXT record}, which replace those of serviceInfo1.
+	 * The attributes of the merged object are compact, see {@link ServiceAttributes}.
+	 * <p>
+	 * mDNS responders repeat their announcements constantly, so merging mostly
+	 * changes nothing; in that case serviceInfo1 itself is returned and nothing is allocated.
+	 *
+	 * @param serviceInfo1 first (base) object
+	 * @param serviceInfo2 second object to merge on top of first one
+	 * @return Merged new MulticastServiceInfo object, or serviceInfo1 if merging does not change it
+	 * @see #diff(MulticastServiceInfo, MulticastServiceInfo)
+	 */
+	public static MulticastServiceInfo merge(MulticastServiceInfo serviceInfo1, MulticastServiceInfo serviceInfo2) {
+		if (serviceInfo1 == null) return serviceInfo2;
+		if (serviceInfo2 == null) return serviceInfo1;
+		ServiceChanges changes = diff(serviceInfo1, serviceInfo2);
+		if (changes.isEmpty()) return serviceInfo1;
+		MulticastServiceInfo serviceInfo = new MulticastServiceInfo();
+		serviceInfo.host = changes.contains(ServiceChanges.Field.HOST) ? serviceInfo2.host : serviceInfo1.host;
+		serviceInfo.hostname = changes.contains(ServiceChanges.Field.HOSTNAME) ? serviceInfo2.hostname : serviceInfo1.hostname;
+		if (serviceInfo2.addressesComplete && serviceInfo2.addresses != null) {
+			serviceInfo.addresses = new ArrayList<>(serviceInfo2.addresses);
+		} else if (serviceInfo1.addresses != null || serviceInfo2.addresses != null) {
+			// a dual-stack service is announced with IPv4 and IPv6 addresses, keep both
+			serviceInfo.addresses = new ArrayList<>();
+			if (serviceInfo1.addresses != null) serviceInfo.addresses.addAll(serviceInfo1.addresses);
+			if (serviceInfo2.addresses != null) {
+				for (InetAddress address : serviceInfo2.addresses) {
+					if (!serviceInfo.addresses.contains(address)) serviceInfo.addresses.add(address);
+				}
+			}
+		}
+		serviceInfo.networkInterface = changes.contains(ServiceChanges.Field.NETWORK_INTERFACE) ? serviceInfo2.networkInterface : serviceInfo1.networkInterface;
+		serviceInfo.serviceName = changes.contains(ServiceChanges.Field.SERVICE_NAME) ? serviceInfo2.serviceName : serviceInfo1.serviceName;
+		serviceInfo.serviceType = changes.contains(ServiceChanges.Field.SERVICE_TYPE) ? serviceInfo2.serviceType : serviceInfo1.serviceType;
+		serviceInfo.port = changes.contains(ServiceChanges.Field.PORT) ? serviceInfo2.port : serviceInfo1.port;
+		if (serviceInfo2.attributesComplete && serviceInfo2.attributes != null) {
+			serviceInfo.attributes = ServiceAttributes.of(serviceInfo2.attributes);
+		} else {
+			serviceInfo.attributes = ServiceAttributes.merge(serviceInfo1.attributes, serviceInfo2.attributes);
+		}
+		return serviceInfo;
+	}
+	
+	/**
+	 * Get a copy for keeping around, e.g. in a list of known services.
+	 * The copy shares its service type and attributes with other compacted
+	 * services, see {@link ServiceAttributes}.
+	 */
+	public MulticastServiceInfo compact() {
+		MulticastServiceInfo serviceInfo = new MulticastServiceInfo(serviceName, ServiceAttributes.intern(serviceType), host, port);
+		serviceInfo.hostname = hostname;
+		if (addresses != null) serviceInfo.addresses = new ArrayList<>(addresses);
+		serviceInfo.networkInterface = networkInterface;
+		serviceInfo.attributes = ServiceAttributes.of(attributes);
+		serviceInfo.attributesComplete = attributesComplete;
+		serviceInfo.addressesComplete = addressesComplete;
+		return serviceInfo;
+	}
+	
+	/**
+	 * Determine which fields merging update on top of base would change.
+	 * Only non-empty fields of update count, as merge() keeps the base value otherwise.
+	 * A host which is already one of the addresses of base is no change, so a dual-stack
+	 * service answering over IPv4 and IPv6 in turn does not flap.
+	 * Complete addresses and TXT records replace those of base, so their
+	 * missing addresses and attribute keys count as changes as well.
+	 * <p>
+	 * Nothing is allocated if nothing changed.
+	 *
+	 * @return the changes, {@link ServiceChanges#NONE} if there are none or either object is null
+	 */
+	public static ServiceChanges diff(MulticastServiceInfo base, MulticastServiceInfo update) {
+		if (base == null || update == null) return ServiceChanges.NONE;
+		int fields = 0;
+		boolean replaceAddresses = update.addressesComplete && update.addresses != null;
+		if (update.host != null && !update.host.equals(base.host)) {
+			// a complete update only moves the host if the known one is gone
+			boolean known = replaceAddresses ? update.addresses.contains(base.host)
+					: base.addresses != null && base.addresses.contains(update.host);
+			if (!known) fields |= ServiceChanges.bit(ServiceChanges.Field.HOST);
+		}
+		if (changed(base.hostname, update.hostname)) fields |= ServiceChanges.bit(ServiceChanges.Field.HOSTNAME);
+		if (update.addresses != null) {
+			boolean changed = replaceAddresses && (base.addresses == null
+					? !update.addresses.isEmpty() : !containsAll(update.addresses, base.addresses));
+			for (int i = 0; i < update.addresses.size() && !changed; i++) {
+				changed = base.addresses == null || !base.addresses.contains(update.addresses.get(i));
+			}
+			if (changed) fields |= ServiceChanges.bit(ServiceChanges.Field.ADDRESSES);
+		}
+		if (changed(base.networkInterface, update.networkInterface)) fields |= ServiceChanges.bit(ServiceChanges.Field.NETWORK_INTERFACE);
+		if (changed(base.serviceName, update.serviceName)) fields |= ServiceChanges.bit(ServiceChanges.Field.SERVICE_NAME);
+		if (changed(base.serviceType, update.serviceType)) fields |= ServiceChanges.bit(ServiceChanges.Field.SERVICE_TYPE);
+		if (update.port != 0 && update.port != base.port) fields |= ServiceChanges.bit(ServiceChanges.Field.PORT);
+		Set<String> added = null;
+		Set<String> changed = null;
+		Set<String> removed = null;
+		// an empty TXT record only counts if it replaces the known attributes
+		if (update.attributes != null && (update.attributesComplete || !update.attributes.isEmpty())
+				&& !sameTextRecord(base.attributes, update.attributes)) {
+			for (Map.Entry<String, String> entry : update.attributes.entrySet()) {
+				String key = entry.getKey();
+				if (base.attributes == null || !base.attributes.containsKey(key)) {
+					if (added == null) added = new LinkedHashSet<>();
+					added.add(key);
+				} else if (!equal(base.attributes.get(key), entry.getValue())) {
+					if (changed == null) changed = new LinkedHashSet<>();
+					changed.add(key);
+				}
+			}
+			if (update.attributesComplete && base.attributes != null) {
+				for (String key : base.attributes.keySet()) {
+					if (update.attributes.containsKey(key)) continue;
+					if (removed == null) removed = new LinkedHashSet<>();
+					removed.add(key);
+				}
+			}
+		}
+		if (added != null || changed != null || removed != null) fields |= ServiceChanges.bit(ServiceChanges.Field.ATTRIBUTES);
+		if (fields == 0) return ServiceChanges.NONE;
+		return new ServiceChanges(fields, unmodifiable(added), unmodifiable(changed), unmodifiable(removed));
+	}
+	
+	private static Set<String> unmodifiable(Set<String> keys) {
+		return keys == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(keys);
+	}
+	
+	private static boolean containsAll(List<InetAddress> addresses, List<InetAddress> others) {
+		for (int i = 0; i < others.size(); i++) {
+			if (!addresses.contains(others.get(i))) return false;
+		}
+		return true;
+	}
+	
+	private static boolean changed(Object base, Object update) {
+		return update != null && !update.equals(base);
+	}
+	
+	/**
+	 * Repeated announcements carry the same TXT record, compare it without decoding every attribute.
+	 */
+	private static boolean sameTextRecord(Map<String, String> base, Map<String, String> update) {
+		if (!(update instanceof DNSTextRecord)) return false;
+		if (base instanceof DNSTextRecord) return ((DNSTextRecord) base).rdataEquals((DNSTextRecord) update);
+		if (base instanceof ServiceAttributes) return ((ServiceAttributes) base).entriesEqual((DNSTextRecord) update);
+		return false;
+	}
+	
+	private static boolean equal(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+	
+	public Map<String, String> getAttributes() {
+		return attributes;
+	}
+	
+	public void setAttributes(Map<String, String> attributes) {
+		this.attributes = attributes;
+	}
+	
+	//TODO: overwrite toString
+}
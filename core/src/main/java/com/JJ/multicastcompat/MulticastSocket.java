@@ -0,0 +1,762 @@
+package com.JJ.multicastcompat;
+
+import com.JJ.multicastcompat.spi.Log;
+import com.JJ.multicastcompat.spi.Platform;
+import com.cafbit.netlib.InterfaceUtil;
+import com.cafbit.netlib.dns.DNSAnswer;
+import com.cafbit.netlib.dns.DNSComponent;
+import com.cafbit.netlib.dns.DNSMessage;
+import com.cafbit.netlib.dns.DNSMessageView;
+import com.cafbit.netlib.dns.DNSName;
+import com.cafbit.netlib.dns.DNSRecordCache;
+import com.cafbit.netlib.dns.DNSTextRecord;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+class MulticastSocket extends Thread {
+	public static final String TAG = MulticastSocket.class.getSimpleName();
+	
+	private static final int BUFFER_SIZE = 4096;
+	private static final int TTL = 2;
+	private static final int RECEIVE_TIMEOUT = 1000;
+	// ethernet MTU minus IPv6 and UDP headers, every query is sent to the IPv4 and the IPv6 group
+	// see: https://tools.ietf.org/html/rfc6762 section 17
+	private static final int MAX_QUERY_LENGTH = 1500 - 40 - 8;
+	private static final int STOP_TIMEOUT = 2 * RECEIVE_TIMEOUT;
+	private volatile MulticastTransport transport;
+	private final Platform platform;
+	private final boolean allInterfaces;
+	// lower case query names of all browsed service types, e.g. "_ipp._tcp.local"
+	private final Set<String> browseNames = new CopyOnWriteArraySet<>();
+	// the same names by their interned DNS name, replaced as a whole whenever browseNames changes
+	private volatile Map<DNSName, String> browseTypes = Collections.emptyMap();
+	// the interned names of browseTypes by query name, so that queries do not encode them again
+	private volatile Map<String, DNSName> browseTypeNames = Collections.emptyMap();
+	private final QueryScheduler scheduler = new QueryScheduler();
+	private final QueryBuilder queryBuilder = new QueryBuilder(DNSComponent.Type.PTR, MAX_QUERY_LENGTH);
+	// the names to query for, the records to refresh and the known answers of one loop iteration, only used by the receive thread
+	private final List<String> queryNames = new ArrayList<>();
+	// the names whose questions are in the query packet being built, only used by the receive thread
+	private final List<String> packetNames = new ArrayList<>();
+	private final List<DNSRecordCache.Record> refreshRecords = new ArrayList<>();
+	private final List<DNSAnswer> knownAnswers = new ArrayList<>();
+	private final Object lifecycleLock = new Object();
+	private volatile boolean active = false;
+	private volatile boolean shutdown = false;
+	private boolean sessionRunning = false;
+	private MulticastListener multicastListener;
+	private final PacketPipeline pipeline;
+	private final PacketFilter filter = new PacketFilter();
+	private final MetricsRecorder metrics = new MetricsRecorder();
+	private volatile MetricsReporter metricsReporter;
+	private volatile long metricsInterval;
+	// monotonic time of the next metrics report, only used by the receive thread
+	private long nextReport = Long.MAX_VALUE;
+	// shared by the receive thread and the pipeline workers, guarded by itself
+	private final DNSRecordCache cache = new DNSRecordCache(new DNSRecordCache.Listener() {
+		@Override
+		public void onRecordExpired(DNSRecordCache.Record record) {
+			if (record.type == DNSComponent.Type.A.qtype || record.type == DNSComponent.Type.AAAA.qtype) {
+				addressExpired(record);
+				return;
+			}
+			if (record.type != DNSComponent.Type.PTR.qtype) return;
+			if (!browseTypes.containsKey(record.getDNSName())) return;
+			final MulticastServiceInfo serviceInfo = new MulticastServiceInfo(
+					DNSMessage.getServiceName(record.rdataName), DNSMessage.getServiceType(record.rdataName), null, 0);
+			// notify from a worker, a slow listener must not stall reception
+			pipeline.post(new Runnable() {
+				@Override
+				public void run() {
+					multicastListener.onServiceLost(serviceInfo);
+				}
+			});
+		}
+	});
+	
+	MulticastSocket(Platform platform, MulticastListener listener) {
+		this(platform, listener, false);
+	}
+	
+	/**
+	 * @param allInterfaces whether to join the multicast group on every eligible interface
+	 *                      instead of just the first wifi or ethernet interface
+	 */
+	MulticastSocket(Platform platform, MulticastListener listener, boolean allInterfaces) {
+		this(platform, listener, allInterfaces, PacketPipeline.DEFAULT_WORKERS,
+				PacketPipeline.DEFAULT_QUEUE_CAPACITY, MulticastEngine.DropPolicy.DROP_OLDEST);
+	}
+	
+	/**
+	 * @param workers       the number of threads parsing packets and calling the listener
+	 * @param queueCapacity the number of received packets which may wait for a worker
+	 * @param dropPolicy    which packet to drop when the queue is full
+	 */
+	MulticastSocket(Platform platform, MulticastListener listener, boolean allInterfaces,
+	                int workers, int queueCapacity, MulticastEngine.DropPolicy dropPolicy) {
+		this.platform = platform;
+		this.allInterfaces = allInterfaces;
+		setListener(listener);
+		pipeline = new PacketPipeline(new PacketPipeline.Handler() {
+			@Override
+			public void handlePacket(PacketPipeline.PacketBuffer buffer, DNSMessageView view) {
+				processPacket(buffer, view);
+			}
+		}, workers, queueCapacity, dropPolicy, BUFFER_SIZE);
+	}
+	
+	public void setListener(MulticastListener listener) {
+		this.multicastListener = listener;
+	}
+	
+	@Override
+	public void run() {
+		super.run();
+		Log.v(TAG, "starting network thread");
+		pipeline.start();
+		
+		while (true) {
+			// park without socket or multicast lock until there is something to browse
+			synchronized (lifecycleLock) {
+				while (!active && !shutdown) {
+					try {
+						lifecycleLock.wait();
+					} catch (InterruptedException e) {
+						shutdown = true;
+					}
+				}
+				if (shutdown) break;
+				sessionRunning = true;
+			}
+			try {
+				runSession();
+			} finally {
+				synchronized (lifecycleLock) {
+					sessionRunning = false;
+					lifecycleLock.notifyAll();
+				}
+			}
+		}
+		
+		pipeline.stop();
+		Log.v(TAG, "stopping network thread");
+	}
+	
+	/**
+	 * Open the transport and process packets until discovery is stopped.
+	 */
+	private void runSession() {
+		Set<InetAddress> localAddresses = InterfaceUtil.getLocalAddresses();
+		boolean multicastLock = false;
+		
+		// initialize the network
+		try {
+			List<NetworkInterface> interfaces = platform.getInterfaces(allInterfaces);
+			if (interfaces.isEmpty()) {
+				throw new IOException("no network interface available for multicast");
+			}
+			List<InetAddress> groups = platform.getMulticastGroups();
+			int port = platform.getMulticastPort();
+			if (platform.supportsMulticastChannels()) {
+				transport = new ChannelTransport(interfaces, groups, port, TTL);
+			} else {
+				transport = new SocketTransport(interfaces, groups, port, TTL);
+			}
+			
+			platform.acquireMulticastLock();
+			multicastLock = true;
+			
+			transport.open();
+		} catch (IOException e) {
+			//TODO: escalate error
+			Log.e(TAG, "run: SOCKET INITIALIZATION FAILED", e);
+			if (transport != null) transport.close();
+			if (multicastLock) platform.releaseMulticastLock();
+			synchronized (lifecycleLock) {
+				active = false;
+			}
+			return;
+		}
+		
+		// packets are received straight into pooled buffers and parsed by the pipeline workers
+		DatagramPacket response = new DatagramPacket(new byte[0], 0);
+		
+		Log.d(TAG, "run: now accepting multicast responses");
+		
+		while (active && !shutdown) {
+			long now = getMonotonicMillis();
+			
+			reportMetrics(now);
+			
+			// expire cached records and collect all due questions
+			queryNames.clear();
+			scheduler.due(now, queryNames);
+			long nextEvent;
+			synchronized (cache) {
+				// this runs for every packet, so only touch the cache when one of its deadlines has passed
+				if (cache.nextEvent() <= now) maintainCache(now, queryNames);
+				nextEvent = cache.nextEvent();
+			}
+			
+			// send them in as few packets as possible
+			if (!queryNames.isEmpty()) {
+				try {
+					query(queryNames);
+				} catch (IOException e) {
+					//TODO: handle exception
+					Log.e(TAG, "run: Could not query " + queryNames, e);
+				}
+			}
+			
+			// wait for a packet until the next scheduled event
+			long timeout = Math.min(Math.min(scheduler.nextDeadline(), nextEvent), nextReport) - now;
+			timeout = Math.max(1, Math.min(timeout, RECEIVE_TIMEOUT));
+			
+			// receive a packet (or process an incoming command)
+			PacketPipeline.PacketBuffer buffer = pipeline.receiveBuffer();
+			response.setData(buffer.data);
+			NetworkInterface networkInterface;
+			try {
+				networkInterface = transport.receive(response, timeout);
+			} catch (SocketTimeoutException e) {
+				continue;
+			} catch (IOException e) {
+				// a closed transport means we are being stopped. if discovery has been
+				// started again meanwhile, end this session anyways so that run() opens a new one
+				if (transport.isClosed()) break;
+				Log.e(TAG, "run: recieve error", e);
+				continue;
+			}
+			metrics.packetReceived();
+
+            /*
+            Log.v(TAG, String.format("received: offset=0x%04X (%d) length=0x%04X (%d)", response.getOffset(), response.getOffset(), response.getLength(), response.getLength()));
+            Log.v(TAG, Util.hexDump(response.getData(), response.getOffset(), response.getLength()));
+            */
+			
+			// ignore our own packet transmissions. we only send queries,
+			// so responses from this host come from other processes, e.g. a local responder
+			if (localAddresses.contains(response.getAddress()) && !isResponse(buffer.data, response.getLength())) {
+				continue;
+			}
+			
+			// discard packets which are not about a browsed service type without parsing them
+			if (!filter.accept(buffer.data, 0, response.getLength())) {
+				continue;
+			}
+			
+			buffer.length = response.getLength();
+			buffer.source = response.getAddress();
+			buffer.networkInterface = networkInterface;
+			buffer.receivedNanos = System.nanoTime();
+			buffer.received = buffer.receivedNanos / 1000000;
+			pipeline.submit(buffer);
+		}
+		
+		pipeline.clear();
+		// close the socket and release the multicast lock
+		transport.close();
+		platform.releaseMulticastLock();
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+	
+	/**
+	 * @return whether the QR bit of a raw packet is set
+	 */
+	private static boolean isResponse(byte[] data, int length) {
+		return length > 2 && (data[2] & 0x80) != 0;
+	}
+	
+	/**
+	 * Report the remaining addresses of the browsed services on a host
+	 * one of whose addresses expired, so that they no longer list it.
+	 * Nothing is reported if no address is left, the services are reported
+	 * lost once their own records expire.
+	 */
+	private void addressExpired(final DNSRecordCache.Record expired) {
+		// look at the cache once all records expiring along with this one are gone
+		pipeline.post(new Runnable() {
+			@Override
+			public void run() {
+				List<MulticastServiceInfo> services;
+				synchronized (cache) {
+					services = resolveAddresses(expired.getDNSName());
+				}
+				for (MulticastServiceInfo serviceInfo : services) {
+					multicastListener.onServiceFound(serviceInfo);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Build a service with all cached addresses for every browsed service on a host.
+	 * The caller holds the cache lock.
+	 */
+	private List<MulticastServiceInfo> resolveAddresses(DNSName hostname) {
+		List<MulticastServiceInfo> services = new ArrayList<>();
+		List<DNSRecordCache.Record> srvRecords = cache.getByRdataName(DNSComponent.Type.SRV.qtype, hostname);
+		if (srvRecords.isEmpty()) return services;
+		List<InetAddress> addresses = new ArrayList<>();
+		addAddresses(cache.get(hostname, DNSComponent.Type.A.qtype), addresses);
+		addAddresses(cache.get(hostname, DNSComponent.Type.AAAA.qtype), addresses);
+		if (addresses.isEmpty()) return services;
+		for (DNSRecordCache.Record srv : srvRecords) {
+			DNSName instanceName = srv.getDNSName();
+			if (instanceName.getLabelCount() < 2 || !browseTypes.containsKey(instanceName.suffix(1))) continue;
+			int port = (srv.rdata[4] & 0xFF) << 8 | srv.rdata[5] & 0xFF;
+			MulticastServiceInfo serviceInfo = new MulticastServiceInfo(
+					instanceName.getServiceName(), instanceName.getServiceType(), addresses.get(0), port);
+			serviceInfo.hostname = hostname.toString();
+			serviceInfo.addresses = new ArrayList<>(addresses);
+			serviceInfo.addressesComplete = true;
+			services.add(serviceInfo);
+		}
+		return services;
+	}
+	
+	private static void addAddresses(List<DNSRecordCache.Record> records, List<InetAddress> addresses) {
+		for (DNSRecordCache.Record record : records) {
+			try {
+				addresses.add(InetAddress.getByAddress(record.rdata));
+			} catch (UnknownHostException e) {
+				// not an IPv4 or IPv6 address
+			}
+		}
+	}
+	
+	/**
+	 * Parse a received packet and report the services in it, called by the pipeline workers.
+	 * The packet is indexed in place, names are only decoded on demand.
+	 */
+	private void processPacket(PacketPipeline.PacketBuffer buffer, DNSMessageView view) {
+		long start = System.nanoTime();
+		view.reset(buffer.data, 0, buffer.length);
+		long parseTime = System.nanoTime() - start;
+		if (!view.isResponse()) {
+			// known answers of other queries must not be reported as services
+			observeQuery(view, buffer.received);
+			return;
+		}
+		synchronized (cache) {
+			for (int i = 0; i < view.getRecordCount(); i++) {
+				cache.put(view, i, buffer.received);
+			}
+		}
+		start = System.nanoTime();
+		List<MulticastServiceInfo> services = resolveServices(view, buffer.source, browseTypes.keySet());
+		long now = System.nanoTime();
+		metrics.parsed(parseTime + now - start);
+		
+		//Log.d(TAG, "run: packet message is \"" + new DNSMessage(view).toString().trim() + "\"");
+		for (MulticastServiceInfo serviceInfo : services) {
+			serviceInfo.networkInterface = buffer.networkInterface;
+			if (metrics.awaitingAnswers() && serviceInfo.serviceType != null) {
+				metrics.answered(toQueryName(serviceInfo.serviceType), now);
+			}
+			metrics.callback(System.nanoTime() - buffer.receivedNanos);
+			multicastListener.onServiceFound(serviceInfo);
+		}
+	}
+	
+	/**
+	 * Count our pending queries as sent when another host asks the same questions.
+	 * This only holds if the responders will answer the other query with everything
+	 * we are missing, so questions asking for unicast responses and queries whose
+	 * known answers continue in another packet or include records we do not know are ignored.
+	 * see: https://tools.ietf.org/html/rfc6762 section 7.3
+	 */
+	private void observeQuery(DNSMessageView view, long now) {
+		if ((view.getFlags() & DNSMessage.FLAG_TC) != 0) return;
+		for (int i = 0; i < view.getQuestionCount(); i++) {
+			int type = view.getQuestionType(i);
+			if (type != DNSComponent.Type.PTR.qtype && type != DNSComponent.Type.ANY.qtype) continue;
+			if (view.isUnicastResponse(i)) continue;
+			DNSName questionName = view.getQuestionDNSName(i);
+			String name = browseTypes.get(questionName);
+			if (name == null || !knowsAnswers(view, questionName, now)) continue;
+			if (scheduler.questionObserved(name, now)) metrics.suppressed(name);
+		}
+	}
+	
+	/**
+	 * @return whether we know all PTR records for the name which a query lists as known answers
+	 */
+	private boolean knowsAnswers(DNSMessageView view, DNSName name, long now) {
+		synchronized (cache) {
+			for (int i = 0; i < view.getAnswerCount(); i++) {
+				if (view.getRecordType(i) != DNSComponent.Type.PTR.qtype) continue;
+				if (!name.equals(view.getRecordDNSName(i))) continue;
+				if (!cache.isKnownAnswer(view, i, now)) return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return the occupancy and counters of the packet processing pipeline
+	 */
+	PipelineStatistics getPipelineStatistics() {
+		return pipeline.getStatistics(filter.getRejectedCounts());
+	}
+	
+	/**
+	 * @return the counters and latencies of this socket
+	 */
+	DiscoveryMetrics getMetrics() {
+		int size;
+		long hits, misses, evictions;
+		synchronized (cache) {
+			size = cache.size();
+			hits = cache.getHits();
+			misses = cache.getMisses();
+			evictions = cache.getEvictions();
+		}
+		return metrics.snapshot(getPipelineStatistics(), size, hits, misses, evictions);
+	}
+	
+	/**
+	 * Report the metrics periodically while discovery is running.
+	 *
+	 * @param reporter the reporter, or null to stop reporting
+	 * @param interval the reporting interval in milliseconds
+	 */
+	void setMetricsReporter(MetricsReporter reporter, long interval) {
+		if (reporter != null && interval <= 0) throw new IllegalArgumentException("interval must be positive");
+		metricsInterval = interval;
+		metricsReporter = reporter;
+		// the receive thread schedules the first report within RECEIVE_TIMEOUT
+	}
+	
+	/**
+	 * Hand the metrics to the reporter if a report is due, called by the receive thread.
+	 */
+	private void reportMetrics(long now) {
+		final MetricsReporter reporter = metricsReporter;
+		if (reporter == null) {
+			nextReport = Long.MAX_VALUE;
+			return;
+		}
+		if (nextReport == Long.MAX_VALUE) nextReport = now + metricsInterval;
+		if (now < nextReport) return;
+		nextReport = now + metricsInterval;
+		// take the snapshot on a worker, it has to wait for the cache lock
+		pipeline.post(new Runnable() {
+			@Override
+			public void run() {
+				reporter.report(getMetrics());
+			}
+		});
+	}
+	
+	/**
+	 * Build a service for every PTR record in the message.
+	 * Responders put the matching SRV, TXT, A and AAAA records into the
+	 * same packet (usually the additional section), so a single response
+	 * resolves the service without another round trip.
+	 * Goodbyes (PTR records with TTL 0) are skipped, the cache reports
+	 * those services as lost when their records expire.
+	 *
+	 * @param view        the indexed message
+	 * @param source      the sender, used as host if the message carries no address records
+	 * @param browseTypes the names of the browsed service types
+	 * @return the services of the browsed types described by this message
+	 */
+	static List<MulticastServiceInfo> resolveServices(DNSMessageView view, InetAddress source, Set<DNSName> browseTypes) {
+		List<MulticastServiceInfo> services = new LinkedList<>();
+		int recordCount = view.getRecordCount();
+		int ptr = DNSComponent.Type.PTR.qtype;
+		for (int i = view.findRecord(ptr, 0); i != -1; i = view.findRecord(ptr, i + 1)) {
+			if (!browseTypes.contains(view.getRecordDNSName(i))) continue;
+			// TTLs with the most significant bit set count as zero as well
+			if (view.getRecordTtl(i) <= 0) continue;
+			// interned names compare by identity and parse the service type and name only once
+			DNSName instanceName = view.getRdataDNSName(i);
+			MulticastServiceInfo serviceInfo = new MulticastServiceInfo(
+					instanceName.getServiceName(), instanceName.getServiceType(), source, 0);
+			Map<String, String> attributes = null;
+			// whether every TXT record of the instance flushes the known attributes
+			boolean attributesComplete = true;
+			DNSName hostname = null;
+			for (int j = 0; j < recordCount; j++) {
+				int type = view.getRecordType(j);
+				if (type != DNSComponent.Type.SRV.qtype && type != DNSComponent.Type.TXT.qtype) continue;
+				if (!instanceName.equals(view.getRecordDNSName(j))) continue;
+				if (type == DNSComponent.Type.SRV.qtype) {
+					serviceInfo.port = view.getSRVPort(j);
+					hostname = view.getSRVTargetDNSName(j);
+					serviceInfo.hostname = hostname.toString();
+				} else if (attributes == null) {
+					attributes = view.getTextRecord(j);
+					attributesComplete = view.isCacheFlush(j);
+				} else {
+					attributesComplete &= view.isCacheFlush(j);
+					// several TXT records for one instance are rare, combine them
+					attributes = new LinkedHashMap<>(attributes);
+					view.readAttributes(j, attributes);
+				}
+			}
+			serviceInfo.setAttributes(attributes != null ? attributes : DNSTextRecord.EMPTY);
+			serviceInfo.attributesComplete = attributes != null && attributesComplete;
+			if (hostname != null) {
+				List<InetAddress> addresses = new ArrayList<>();
+				for (int j = 0; j < recordCount; j++) {
+					int type = view.getRecordType(j);
+					if (type != DNSComponent.Type.A.qtype && type != DNSComponent.Type.AAAA.qtype) continue;
+					if (!hostname.equals(view.getRecordDNSName(j))) continue;
+					addresses.add(view.getAddress(j));
+				}
+				if (!addresses.isEmpty()) {
+					serviceInfo.addresses = addresses;
+					serviceInfo.host = addresses.get(0);
+				}
+			}
+			services.add(serviceInfo);
+		}
+		return services;
+	}
+	
+	/**
+	 * Expire cached records and collect the browsed service types
+	 * which have records about to expire. The caller must hold the cache lock.
+	 *
+	 * @param refreshNames receives the names which should be refreshed, unless already contained
+	 */
+	private void maintainCache(long now, List<String> refreshNames) {
+		cache.expire(now);
+		refreshRecords.clear();
+		cache.refresh(now, refreshRecords);
+		for (int i = 0; i < refreshRecords.size(); i++) {
+			DNSRecordCache.Record record = refreshRecords.get(i);
+			if (record.type != DNSComponent.Type.PTR.qtype) continue;
+			String name = browseTypes.get(record.getDNSName());
+			if (name == null || refreshNames.contains(name)) continue;
+			refreshNames.add(name);
+		}
+		refreshRecords.clear();
+	}
+	
+	/**
+	 * Start browsing for a service type in addition to the ones already browsed.
+	 *
+	 * @param serviceType the service type, e.g. "_ipp._tcp."
+	 */
+	public void discoverServices(String serviceType) throws IOException {
+		String name = toQueryName(serviceType);
+		if (browseNames.add(name)) {
+			queryBuilder.add(name);
+			metrics.addType(name);
+			updateBrowseTypes();
+			scheduler.add(name, getMonotonicMillis());
+		}
+		synchronized (lifecycleLock) {
+			if (!active) {
+				active = true;
+				lifecycleLock.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Stop browsing for a service type.
+	 *
+	 * @param serviceType the service type, e.g. "_ipp._tcp."
+	 */
+	public void stopServiceDiscovery(String serviceType) {
+		String name = toQueryName(serviceType);
+		browseNames.remove(name);
+		queryBuilder.remove(name);
+		metrics.removeType(name);
+		updateBrowseTypes();
+		scheduler.remove(name);
+		if (browseNames.isEmpty()) stopSession();
+	}
+	
+	/**
+	 * Stop browsing for all service types.
+	 * This closes the socket and releases the multicast lock within a bounded time,
+	 * the thread is kept parked until discovery is started again.
+	 */
+	public void stopServiceDiscovery() {
+		browseNames.clear();
+		queryBuilder.clear();
+		metrics.clearTypes();
+		updateBrowseTypes();
+		scheduler.clear();
+		stopSession();
+	}
+	
+	/**
+	 * Publish the current browse names to the packet filter and the workers.
+	 */
+	private void updateBrowseTypes() {
+		synchronized (browseNames) {
+			Map<DNSName, String> browseTypes = new HashMap<>();
+			Map<String, DNSName> browseTypeNames = new HashMap<>();
+			for (String name : browseNames) {
+				DNSName dnsName = DNSName.of(name);
+				browseTypes.put(dnsName, name);
+				browseTypeNames.put(name, dnsName);
+			}
+			this.browseTypes = browseTypes;
+			this.browseTypeNames = browseTypeNames;
+			filter.setNames(browseNames);
+		}
+	}
+	
+	private void stopSession() {
+		synchronized (lifecycleLock) {
+			if (!active) return;
+			active = false;
+		}
+		awaitSessionEnd();
+	}
+	
+	/**
+	 * Wake up a receiving session thread and wait for it to release its resources.
+	 * Calls from the session or a worker thread return without waiting.
+	 */
+	private void awaitSessionEnd() {
+		MulticastTransport transport = this.transport;
+		if (transport != null) transport.wakeup();
+		// never wait for ourselves or a worker, e.g. when called from a listener callback:
+		// the session might wait for the packets queued behind the calling worker
+		if (Thread.currentThread() == this || pipeline.isWorkerThread()) return;
+		long deadline = getMonotonicMillis() + STOP_TIMEOUT;
+		synchronized (lifecycleLock) {
+			long remaining;
+			while (sessionRunning && (!active || shutdown) && (remaining = deadline - getMonotonicMillis()) > 0) {
+				try {
+					lifecycleLock.wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+	
+	Set<String> getBrowseNames() {
+		return browseNames;
+	}
+	
+	/**
+	 * Turn a service type like "_ipp._tcp." or "_ipp._tcp" into its query name "_ipp._tcp.local".
+	 */
+	static String toQueryName(String serviceType) {
+		String name = serviceType.toLowerCase(Locale.US);
+		if (name.endsWith(".")) name = name.substring(0, name.length() - 1);
+		if (!name.endsWith(".local")) name += ".local";
+		return name;
+	}
+	
+	/**
+	 * Query for all names, packing as many questions into one packet as fit into the MTU.
+	 * The questions have been encoded when the names were added, so only known answers allocate.
+	 */
+	private void query(List<String> names) throws IOException {
+		long now = System.nanoTime();
+		queryBuilder.begin();
+		packetNames.clear();
+		for (int i = 0; i < names.size(); i++) {
+			String name = names.get(i);
+			if (appendQuestion(name)) continue;
+			sendWithKnownAnswers(now);
+			queryBuilder.begin();
+			appendQuestion(name);
+		}
+		if (!queryBuilder.isEmpty()) sendWithKnownAnswers(now);
+	}
+	
+	/**
+	 * Append the question for a name to the current packet and remember its name,
+	 * unless the name is not browsed anymore and has been skipped.
+	 *
+	 * @return false if the packet is full
+	 */
+	private boolean appendQuestion(String name) {
+		int questions = queryBuilder.getQuestionCount();
+		if (!queryBuilder.append(name)) return false;
+		if (queryBuilder.getQuestionCount() > questions) packetNames.add(name);
+		return true;
+	}
+	
+	/**
+	 * Add the cached answers to the questions of the current packet and send it.
+	 * Answers which do not fit continue in further packets without questions,
+	 * all but the last one have the TC bit set so that responders wait for the rest.
+	 * Only the questions which have been sent count as queries in the metrics.
+	 * see: https://tools.ietf.org/html/rfc6762 sections 7.1 and 7.2
+	 *
+	 * @param queryNanos the time of the query for the metrics
+	 */
+	private void sendWithKnownAnswers(long queryNanos) throws IOException {
+		long now = getMonotonicMillis();
+		Map<String, DNSName> browseTypeNames = this.browseTypeNames;
+		synchronized (cache) {
+			for (int i = 0; i < packetNames.size(); i++) {
+				String name = packetNames.get(i);
+				DNSName dnsName = browseTypeNames.get(name);
+				// the name might have stopped being browsed since its question was appended
+				if (dnsName == null) dnsName = DNSName.of(name);
+				cache.getKnownAnswers(dnsName, DNSComponent.Type.PTR.qtype, now, knownAnswers);
+			}
+		}
+		try {
+			for (int i = 0; i < knownAnswers.size(); i++) {
+				DNSAnswer answer = knownAnswers.get(i);
+				if (queryBuilder.appendAnswer(answer)) continue;
+				send(true);
+				queryBuilder.begin();
+				// a single answer always fits into an empty packet
+				queryBuilder.appendAnswer(answer);
+			}
+			send(false);
+			for (int i = 0; i < packetNames.size(); i++) {
+				metrics.queried(packetNames.get(i), queryNanos);
+			}
+		} finally {
+			knownAnswers.clear();
+			packetNames.clear();
+		}
+	}
+	
+	private void send(boolean truncated) throws IOException {
+		int length = queryBuilder.finish(truncated);
+		//Log.v(TAG, "query: " + Util.hexDump(queryBuilder.getPacket(), 0, length));
+		transport.send(queryBuilder.getPacket(), length);
+		metrics.packetSent();
+	}
+	
+	/**
+	 * Stop discovery and terminate the thread for good.
+	 */
+	void end() {
+		synchronized (lifecycleLock) {
+			shutdown = true;
+			lifecycleLock.notifyAll();
+		}
+		awaitSessionEnd();
+	}
+	
+	private long getMonotonicMillis() {
+		return System.nanoTime() / 1000000;
+	}
+}
@@ -0,0 +1,44 @@
+package com.JJ.multicastcompat;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.NetworkInterface;
+
+/**
+ * Sends and receives multicast DNS packets on one or more network interfaces.
+ */
+interface MulticastTransport {
+	
+	/**
+	 * Open the transport and join the multicast group on all its interfaces.
+	 */
+	void open() throws IOException;
+	
+	/**
+	 * Wait for the next packet.
+	 *
+	 * @param packet  the packet to receive into
+	 * @param timeout the maximum time to wait in milliseconds
+	 * @return the interface the packet arrived on, or null if it is unknown
+	 * @throws java.net.SocketTimeoutException if no packet arrived in time
+	 */
+	NetworkInterface receive(DatagramPacket packet, long timeout) throws IOException;
+	
+	/**
+	 * Send a packet to the multicast group on every interface.
+	 */
+	void send(byte[] data, int length) throws IOException;
+	
+	/**
+	 * Make a receive() blocked in another thread return promptly.
+	 * Implementations may close the transport for this, so it is only used for stopping.
+	 */
+	void wakeup();
+	
+	void close();
+	
+	/**
+	 * @return whether the transport has been closed, e.g. by wakeup(), and can not receive anymore
+	 */
+	boolean isClosed();
+}
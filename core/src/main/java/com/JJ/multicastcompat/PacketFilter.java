@@ -0,0 +1,122 @@
+package com.JJ.multicastcompat;
+
+import com.cafbit.netlib.dns.DNSMessageView;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Rejects irrelevant packets on the receive thread by looking at their raw bytes,
+ * before they take up a queue slot or get parsed.
+ * <p>
+ * A packet is accepted if it is a standard multicast DNS response with at least
+ * one answer, or a query with at least one question, which mentions one of the
+ * browsed service types. Queries of other hosts are needed to suppress our own
+ * duplicate questions. Names may be
+ * compressed, but the first label of a service type (e.g. "_ipp" of
+ * "_ipp._tcp.local") always appears literally in every packet about it,
+ * so the packet is searched for that length-prefixed label.
+ * <p>
+ * Checking a packet does not allocate any memory.
+ */
+class PacketFilter {
+	
+	private static final int FLAG_QR = 0x8000;
+	private static final int FLAG_OPCODE = 0x7800;
+	private static final int FLAG_RCODE = 0x000F;
+	private static final PipelineStatistics.RejectReason[] REASONS = PipelineStatistics.RejectReason.values();
+	
+	// length-prefixed lower case first labels of the browsed service types
+	private volatile byte[][] labels = new byte[0][];
+	private final AtomicLongArray rejected = new AtomicLongArray(REASONS.length);
+	
+	/**
+	 * Set the service types packets have to mention.
+	 *
+	 * @param names the query names, e.g. "_ipp._tcp.local"
+	 */
+	void setNames(Collection<String> names) {
+		List<byte[]> labels = new ArrayList<>();
+		for (String name : names) {
+			int end = name.indexOf('.');
+			String label = (end == -1 ? name : name.substring(0, end)).toLowerCase(Locale.US);
+			if (label.isEmpty() || label.length() > 63) continue;
+			byte[] encoded = new byte[label.length() + 1];
+			encoded[0] = (byte) label.length();
+			for (int i = 0; i < label.length(); i++) {
+				encoded[i + 1] = (byte) label.charAt(i);
+			}
+			labels.add(encoded);
+		}
+		this.labels = labels.toArray(new byte[labels.size()][]);
+	}
+	
+	/**
+	 * @return true if the packet should be parsed, false if it has been rejected and counted
+	 */
+	boolean accept(byte[] data, int offset, int length) {
+		PipelineStatistics.RejectReason reason = check(data, offset, length);
+		if (reason == null) return true;
+		rejected.incrementAndGet(reason.ordinal());
+		return false;
+	}
+	
+	private PipelineStatistics.RejectReason check(byte[] data, int offset, int length) {
+		if (length < DNSMessageView.HEADER_LENGTH) {
+			return PipelineStatistics.RejectReason.TRUNCATED;
+		}
+		int flags = readShort(data, offset + 2);
+		// see: https://tools.ietf.org/html/rfc6762 sections 18.3 and 18.11
+		if ((flags & (FLAG_OPCODE | FLAG_RCODE)) != 0) {
+			return PipelineStatistics.RejectReason.NON_STANDARD;
+		}
+		if ((flags & FLAG_QR) == 0) {
+			if (readShort(data, offset + 4) == 0) {
+				return PipelineStatistics.RejectReason.QUERY;
+			}
+		} else if (readShort(data, offset + 6) == 0) {
+			return PipelineStatistics.RejectReason.NO_ANSWERS;
+		}
+		byte[][] labels = this.labels;
+		for (byte[] label : labels) {
+			if (contains(data, offset + DNSMessageView.HEADER_LENGTH, offset + length, label)) return null;
+		}
+		return PipelineStatistics.RejectReason.NOT_SUBSCRIBED;
+	}
+	
+	/**
+	 * Search for a lower case label, ignoring the case of ASCII letters in the packet.
+	 */
+	private static boolean contains(byte[] data, int start, int end, byte[] label) {
+		int last = end - label.length;
+		outer:
+		for (int i = start; i <= last; i++) {
+			if (data[i] != label[0]) continue;
+			for (int j = 1; j < label.length; j++) {
+				int b = data[i + j];
+				if (b >= 'A' && b <= 'Z') b += 'a' - 'A';
+				if (b != label[j]) continue outer;
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	private static int readShort(byte[] data, int offset) {
+		return (data[offset] & 0xFF) << 8 | (data[offset + 1] & 0xFF);
+	}
+	
+	/**
+	 * @return the number of rejected packets, indexed by the ordinal of their reject reason
+	 */
+	long[] getRejectedCounts() {
+		long[] counts = new long[REASONS.length];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = rejected.get(i);
+		}
+		return counts;
+	}
+}
@@ -0,0 +1,264 @@
+package com.JJ.multicastcompat;
+
+import com.JJ.multicastcompat.spi.Log;
+import com.cafbit.netlib.dns.DNSException;
+import com.cafbit.netlib.dns.DNSMessageView;
+
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.nio.BufferUnderflowException;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Decouples receiving packets from parsing them and calling listeners.
+ * <p>
+ * The receive thread reads every datagram straight into a buffer taken
+ * from a fixed pool and hands it to a bounded queue. A configurable number
+ * of worker threads take the buffers from the queue, parse and dispatch
+ * them and return the buffers to the pool. When the workers can not keep
+ * up, the queue drops either the oldest queued or the newest packet, so
+ * the receive thread never blocks and the kernel buffer keeps draining.
+ * <p>
+ * The pool holds one buffer for every queue slot, every worker and the
+ * receive thread, so taking a buffer from it never fails.
+ */
+class PacketPipeline {
+	private static final String TAG = PacketPipeline.class.getSimpleName();
+	
+	static final int DEFAULT_WORKERS = 1;
+	static final int DEFAULT_QUEUE_CAPACITY = 32;
+	
+	// wakes up a worker to run posted events, never returned to the pool
+	private static final PacketBuffer WAKEUP = new PacketBuffer(0);
+	
+	private final Handler handler;
+	private final MulticastEngine.DropPolicy dropPolicy;
+	private final int queueCapacity;
+	private final int poolSize;
+	private final BlockingQueue<PacketBuffer> pool;
+	private final BlockingQueue<PacketBuffer> queue;
+	private final Queue<Runnable> events = new ConcurrentLinkedQueue<>();
+	private final Worker[] workers;
+	// the buffer the receive thread reads the next packet into
+	private PacketBuffer spare;
+	
+	private static final int RECEIVED = 0;
+	private static final int DROPPED = 1;
+	private static final int PROCESSED = 2;
+	// followed by one counter for every failure reason
+	private static final int FAILED = 3;
+	private static final PipelineStatistics.FailureReason[] FAILURE_REASONS = PipelineStatistics.FailureReason.values();
+	private final StripedCounters counters = new StripedCounters(FAILED + FAILURE_REASONS.length);
+	
+	/**
+	 * @param handler       parses and dispatches packets on the worker threads
+	 * @param workerCount   the number of worker threads
+	 * @param queueCapacity the maximum number of packets waiting for a worker
+	 * @param dropPolicy    which packet to drop when the queue is full
+	 * @param bufferSize    the size of every pooled buffer
+	 */
+	PacketPipeline(Handler handler, int workerCount, int queueCapacity, MulticastEngine.DropPolicy dropPolicy, int bufferSize) {
+		if (workerCount < 1) throw new IllegalArgumentException("at least one worker is needed");
+		if (queueCapacity < 1) throw new IllegalArgumentException("queue capacity must be positive");
+		this.handler = handler;
+		this.dropPolicy = dropPolicy;
+		this.queueCapacity = queueCapacity;
+		this.poolSize = queueCapacity + workerCount + 1;
+		pool = new ArrayBlockingQueue<>(poolSize);
+		for (int i = 0; i < poolSize - 1; i++) {
+			pool.add(new PacketBuffer(bufferSize));
+		}
+		spare = new PacketBuffer(bufferSize);
+		queue = new ArrayBlockingQueue<>(queueCapacity);
+		workers = new Worker[workerCount];
+		for (int i = 0; i < workerCount; i++) {
+			workers[i] = new Worker("mDNS worker " + i);
+		}
+	}
+	
+	void start() {
+		for (Worker worker : workers) {
+			worker.start();
+		}
+	}
+	
+	/**
+	 * Stop all workers, dropping the packets which are still queued.
+	 */
+	void stop() {
+		for (Worker worker : workers) {
+			worker.interrupt();
+		}
+		for (Worker worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		clear();
+	}
+	
+	/**
+	 * Drop all queued packets.
+	 */
+	void clear() {
+		PacketBuffer buffer;
+		while ((buffer = queue.poll()) != null) {
+			release(buffer);
+		}
+	}
+	
+	/**
+	 * Get the buffer to receive the next packet into.
+	 * Must only be called from the receive thread.
+	 */
+	PacketBuffer receiveBuffer() {
+		return spare;
+	}
+	
+	/**
+	 * Queue the packet which has been received into the buffer returned by receiveBuffer().
+	 * Must only be called from the receive thread, never blocks.
+	 */
+	void submit(PacketBuffer buffer) {
+		counters.increment(RECEIVED);
+		if (queue.offer(buffer)) {
+			spare = pool.poll();
+			return;
+		}
+		if (dropPolicy == MulticastEngine.DropPolicy.DROP_NEWEST) {
+			// keep receiving into the same buffer
+			counters.increment(DROPPED);
+			return;
+		}
+		// make room by taking over the buffer of the oldest queued packet
+		PacketBuffer oldest;
+		while ((oldest = queue.poll()) == WAKEUP) {
+			// the workers are busy anyways and will run the events after their current packet
+		}
+		if (oldest != null) counters.increment(DROPPED);
+		if (!queue.offer(buffer)) {
+			// a concurrent post() took the free slot
+			counters.increment(DROPPED);
+			if (oldest != null) release(oldest);
+			return;
+		}
+		spare = oldest != null ? oldest : pool.poll();
+	}
+	
+	/**
+	 * Run a task on a worker thread, in between two packets.
+	 * Used for events which should not stall the receive thread, like lost services.
+	 */
+	void post(Runnable event) {
+		events.add(event);
+		queue.offer(WAKEUP);
+	}
+	
+	/**
+	 * @return whether the calling thread is one of the workers, e.g. in a listener callback
+	 */
+	boolean isWorkerThread() {
+		Thread current = Thread.currentThread();
+		for (Worker worker : workers) {
+			if (worker == current) return true;
+		}
+		return false;
+	}
+	
+	private void release(PacketBuffer buffer) {
+		if (buffer != WAKEUP) pool.offer(buffer);
+	}
+	
+	/**
+	 * @param rejected the reject counts of the prefilter in front of this pipeline
+	 */
+	PipelineStatistics getStatistics(long[] rejected) {
+		int queued = 0;
+		for (PacketBuffer buffer : queue) {
+			if (buffer != WAKEUP) queued++;
+		}
+		long[] failures = new long[FAILURE_REASONS.length];
+		for (int i = 0; i < failures.length; i++) {
+			failures[i] = counters.sum(FAILED + i);
+		}
+		return new PipelineStatistics(workers.length, queued, queueCapacity, pool.size(), poolSize,
+				counters.sum(RECEIVED), counters.sum(DROPPED), counters.sum(PROCESSED), failures, rejected);
+	}
+	
+	interface Handler {
+		/**
+		 * Parse and dispatch a packet.
+		 *
+		 * @param buffer the received packet, only valid until this method returns
+		 * @param view   a message view owned by the calling worker
+		 */
+		void handlePacket(PacketBuffer buffer, DNSMessageView view) throws Exception;
+	}
+	
+	/**
+	 * A pooled receive buffer along with the metadata of the packet in it.
+	 */
+	static class PacketBuffer {
+		final byte[] data;
+		int length;
+		InetAddress source;
+		NetworkInterface networkInterface;
+		// monotonic time of reception in milliseconds and nanoseconds
+		long received;
+		long receivedNanos;
+		
+		private PacketBuffer(int size) {
+			data = new byte[size];
+		}
+	}
+	
+	private class Worker extends Thread {
+		private final DNSMessageView view = new DNSMessageView();
+		
+		Worker(String name) {
+			super(name);
+			setDaemon(true);
+		}
+		
+		@Override
+		public void run() {
+			while (!isInterrupted()) {
+				PacketBuffer buffer;
+				try {
+					buffer = queue.take();
+				} catch (InterruptedException e) {
+					break;
+				}
+				Runnable event;
+				while ((event = events.poll()) != null) {
+					try {
+						event.run();
+					} catch (RuntimeException e) {
+						Log.e(TAG, "run: event failed", e);
+					}
+				}
+				if (buffer == WAKEUP) continue;
+				try {
+					handler.handlePacket(buffer, view);
+					counters.increment(PROCESSED);
+				} catch (DNSException | IndexOutOfBoundsException | BufferUnderflowException e) {
+					counters.increment(FAILED + PipelineStatistics.FailureReason.MALFORMED.ordinal());
+				} catch (Exception e) {
+					// e.g. a bug in a listener
+					counters.increment(FAILED + PipelineStatistics.FailureReason.UNEXPECTED.ordinal());
+					Log.e(TAG, "run: packet handling failed", e);
+				} finally {
+					buffer.source = null;
+					buffer.networkInterface = null;
+					release(buffer);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package com.JJ.multicastcompat;
+
+/**
+ * A snapshot of the occupancy and counters of the packet processing pipeline,
+ * used to size the worker count and queue capacity.
+ *
+ * @see MulticastEngine#configure(int, int, MulticastEngine.DropPolicy)
+ */
+public class PipelineStatistics {
+	public final int workers;
+	/**
+	 * packets waiting for a worker
+	 */
+	public final int queued;
+	public final int queueCapacity;
+	/**
+	 * buffers neither queued nor in use by a worker or the receive thread
+	 */
+	public final int poolAvailable;
+	public final int poolSize;
+	/**
+	 * packets which passed the prefilter and were handed to the queue
+	 */
+	public final long received;
+	/**
+	 * packets dropped because the queue was full
+	 */
+	public final long dropped;
+	public final long processed;
+	/**
+	 * packets which could not be parsed or dispatched
+	 */
+	public final long failed;
+	private final long[] failures;
+	private final long[] rejected;
+	
+	PipelineStatistics(int workers, int queued, int queueCapacity, int poolAvailable, int poolSize,
+	                   long received, long dropped, long processed, long[] failures, long[] rejected) {
+		this.workers = workers;
+		this.queued = queued;
+		this.queueCapacity = queueCapacity;
+		this.poolAvailable = poolAvailable;
+		this.poolSize = poolSize;
+		this.received = received;
+		this.dropped = dropped;
+		this.processed = processed;
+		long failed = 0;
+		for (long count : failures) {
+			failed += count;
+		}
+		this.failed = failed;
+		this.failures = failures;
+		this.rejected = rejected;
+	}
+	
+	/**
+	 * @return the number of packets the prefilter discarded for the given reason
+	 */
+	public long getRejected(RejectReason reason) {
+		return rejected[reason.ordinal()];
+	}
+	
+	/**
+	 * @return the number of packets the prefilter discarded for any reason
+	 */
+	public long getRejected() {
+		long total = 0;
+		for (long count : rejected) {
+			total += count;
+		}
+		return total;
+	}
+	
+	/**
+	 * @return the number of packets the workers failed on for the given reason
+	 */
+	public long getFailed(FailureReason reason) {
+		return failures[reason.ordinal()];
+	}
+	
+	@Override
+	public String toString() {
+		return "workers=" + workers + " queued=" + queued + "/" + queueCapacity
+				+ " pool=" + poolAvailable + "/" + poolSize + " received=" + received
+				+ " dropped=" + dropped + " processed=" + processed + " failed=" + failed
+				+ " rejected=" + getRejected();
+	}
+	
+	/**
+	 * Why the multicast socket discarded a packet before parsing it.
+	 */
+	public enum RejectReason {
+		/**
+		 * The packet is shorter than a DNS header.
+		 */
+		TRUNCATED,
+		/**
+		 * The packet is a query without questions, like the known answers
+		 * another device continues in a second packet.
+		 */
+		QUERY,
+		/**
+		 * The packet has a non-zero opcode or response code.
+		 */
+		NON_STANDARD,
+		/**
+		 * The packet has no answer records.
+		 */
+		NO_ANSWERS,
+		/**
+		 * The packet does not mention any of the browsed service types.
+		 */
+		NOT_SUBSCRIBED
+	}
+	
+	/**
+	 * Why a worker failed on a packet which passed the prefilter.
+	 */
+	public enum FailureReason {
+		/**
+		 * The packet is truncated or not a valid DNS message.
+		 */
+		MALFORMED,
+		/**
+		 * Any other exception, e.g. one thrown by a listener.
+		 */
+		UNEXPECTED
+	}
+}
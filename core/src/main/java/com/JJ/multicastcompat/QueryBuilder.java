@@ -0,0 +1,326 @@
+package com.JJ.multicastcompat;
+
+import com.cafbit.netlib.dns.DNSAnswer;
+import com.cafbit.netlib.dns.DNSBuffer;
+import com.cafbit.netlib.dns.DNSComponent;
+import com.cafbit.netlib.dns.DNSMessage;
+import com.cafbit.netlib.dns.DNSMessageView;
+import com.cafbit.netlib.dns.DNSQuestion;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assembles query packets from questions which are encoded only once.
+ * <p>
+ * Every browsed name is encoded into its wire format when it is added.
+ * A query is then built by copying the encoded questions behind a header
+ * into a reusable buffer and patching in the question count, so sending
+ * queries allocates nothing.
+ * <p>
+ * Known answers may follow the questions. Their names are encoded when
+ * they are appended, as they change with the cache.
+ * see: https://tools.ietf.org/html/rfc6762 section 7.1
+ * <p>
+ * Every name is compressed against the ones before it in the same packet:
+ * the longest name suffix which is already in the packet, like "_tcp.local",
+ * is written as a pointer to it.
+ * see: http://www.ietf.org/rfc/rfc1035.txt section 4.1.4
+ * <p>
+ * The message ID and all flags but TC are zero, as multicast queries are not
+ * matched to responses by ID.
+ * see: https://tools.ietf.org/html/rfc6762 section 18.1
+ * <p>
+ * Names may be added and removed from any thread, building a packet
+ * is confined to the thread sending the queries.
+ */
+class QueryBuilder {
+	
+	private static final int FLAGS_OFFSET = 2;
+	private static final int QDCOUNT_OFFSET = 4;
+	private static final int ANCOUNT_OFFSET = 6;
+	private static final int MAX_POINTER = 0x3FFF;
+	// qtype and qclass
+	private static final int QUESTION_TAIL = 4;
+	// type, class, ttl and rdlength
+	private static final int RECORD_FIXED_LENGTH = 10;
+	// priority, weight and port
+	private static final int SRV_FIXED_LENGTH = 6;
+	
+	private final DNSComponent.Type type;
+	// the encoded questions by query name
+	private final Map<String, EncodedName> questions = new ConcurrentHashMap<>();
+	private final byte[] packet;
+	private int length;
+	private int questionCount;
+	private int answerCount;
+	// the names in the current packet and the packet offset of each of their labels
+	private EncodedName[] names = new EncodedName[8];
+	private int[][] labelOffsets = new int[8][];
+	private int nameCount;
+	
+	/**
+	 * @param type      the record type to query for
+	 * @param maxLength the maximum length of a query packet
+	 */
+	QueryBuilder(DNSComponent.Type type, int maxLength) {
+		this.type = type;
+		this.packet = new byte[maxLength];
+		begin();
+	}
+	
+	void add(String name) {
+		if (questions.containsKey(name)) return;
+		DNSQuestion question = new DNSQuestion(type, name);
+		DNSBuffer buffer = new DNSBuffer(question.length());
+		question.serialize(buffer);
+		questions.put(name, new EncodedName(buffer.bytes, buffer.bytes.length - QUESTION_TAIL));
+	}
+	
+	void remove(String name) {
+		questions.remove(name);
+	}
+	
+	void clear() {
+		questions.clear();
+	}
+	
+	/**
+	 * Start a new packet, discarding the questions and answers appended so far.
+	 */
+	void begin() {
+		// message id, flags and all section counts are zero
+		for (int i = 0; i < DNSMessageView.HEADER_LENGTH; i++) {
+			packet[i] = 0;
+		}
+		length = DNSMessageView.HEADER_LENGTH;
+		questionCount = 0;
+		answerCount = 0;
+		truncateNames(0);
+	}
+	
+	/**
+	 * Append the question for a name to the current packet.
+	 * Names which have not been added are skipped.
+	 * All questions have to be appended before the first answer.
+	 *
+	 * @return false if the packet is full, the question has not been appended then
+	 */
+	boolean append(String name) {
+		EncodedName question = questions.get(name);
+		if (question == null) return true;
+		if (!writeName(question, QUESTION_TAIL)) return false;
+		System.arraycopy(question.bytes, question.length, packet, length, QUESTION_TAIL);
+		length += QUESTION_TAIL;
+		questionCount++;
+		return true;
+	}
+	
+	/**
+	 * Append a known answer to the current packet.
+	 * The cache-flush bit is never set in known answers.
+	 * see: https://tools.ietf.org/html/rfc6762 section 10.2
+	 *
+	 * @return false if the packet is full, the answer has not been appended then
+	 */
+	boolean appendAnswer(DNSAnswer answer) {
+		int start = length;
+		int startNames = nameCount;
+		if (!writeName(encode(answer.name), RECORD_FIXED_LENGTH)) return false;
+		writeShort(answer.type.qtype);
+		writeShort(1); // class IN
+		writeShort(answer.ttl >>> 16);
+		writeShort(answer.ttl);
+		// the rdata name may be compressed, so fill in the rdlength afterwards
+		int rdlengthOffset = length;
+		length += 2;
+		boolean fits;
+		if (answer.type.equals(DNSComponent.Type.PTR)) {
+			fits = writeName(encode(answer.getPTR()), 0);
+		} else if (answer.type.equals(DNSComponent.Type.SRV)) {
+			fits = writeBytes(answer.rdata, SRV_FIXED_LENGTH) && writeName(encode(answer.getSRVTarget()), 0);
+		} else {
+			fits = writeBytes(answer.rdata, answer.rdata.length);
+		}
+		if (!fits) {
+			length = start;
+			truncateNames(startNames);
+			return false;
+		}
+		int rdlength = length - rdlengthOffset - 2;
+		packet[rdlengthOffset] = (byte) (rdlength >>> 8);
+		packet[rdlengthOffset + 1] = (byte) rdlength;
+		answerCount++;
+		return true;
+	}
+	
+	/**
+	 * @return the number of questions in the current packet
+	 */
+	int getQuestionCount() {
+		return questionCount;
+	}
+	
+	boolean isEmpty() {
+		return questionCount == 0 && answerCount == 0;
+	}
+	
+	/**
+	 * Complete the current packet.
+	 *
+	 * @param truncated whether more known answers follow in the next packet
+	 * @return the length of the packet in the buffer returned by getPacket()
+	 */
+	int finish(boolean truncated) {
+		int flags = truncated ? DNSMessage.FLAG_TC : 0;
+		packet[FLAGS_OFFSET] = (byte) (flags >>> 8);
+		packet[FLAGS_OFFSET + 1] = (byte) flags;
+		packet[QDCOUNT_OFFSET] = (byte) (questionCount >>> 8);
+		packet[QDCOUNT_OFFSET + 1] = (byte) questionCount;
+		packet[ANCOUNT_OFFSET] = (byte) (answerCount >>> 8);
+		packet[ANCOUNT_OFFSET + 1] = (byte) answerCount;
+		return length;
+	}
+	
+	byte[] getPacket() {
+		return packet;
+	}
+	
+	/**
+	 * Write a name, compressing its longest suffix which is already in the packet.
+	 *
+	 * @param tail the number of bytes which have to fit behind the name
+	 * @return false if the name and its tail do not fit, nothing has been written then
+	 */
+	private boolean writeName(EncodedName name, int tail) {
+		int labels = name.labels.length;
+		
+		// find the longest suffix which is already in the packet
+		int literal = labels;
+		int pointer = -1;
+		int other = -1;
+		int otherLabel = -1;
+		search:
+		for (int i = 0; i < labels; i++) {
+			for (int j = 0; j < nameCount; j++) {
+				EncodedName candidate = names[j];
+				int label = candidate.labels.length - (labels - i);
+				if (label < 0) continue;
+				if (labelOffsets[j][label] > MAX_POINTER) continue;
+				if (!suffixEquals(name, i, candidate, label)) continue;
+				literal = i;
+				pointer = labelOffsets[j][label];
+				other = j;
+				otherLabel = label;
+				break search;
+			}
+		}
+		
+		int nameLength = pointer == -1 ? name.length : name.labels[literal] + 2;
+		if (length + nameLength + tail > packet.length) return false;
+		int[] offsets = reserve(labels);
+		System.arraycopy(name.bytes, 0, packet, length, pointer == -1 ? name.length : name.labels[literal]);
+		for (int i = 0; i < labels; i++) {
+			offsets[i] = i < literal ? length + name.labels[i] : labelOffsets[other][otherLabel + i - literal];
+		}
+		if (pointer != -1) {
+			int offset = length + name.labels[literal];
+			packet[offset] = (byte) (0xC0 | pointer >>> 8);
+			packet[offset + 1] = (byte) pointer;
+		}
+		length += nameLength;
+		names[nameCount++] = name;
+		return true;
+	}
+	
+	private boolean writeBytes(byte[] bytes, int count) {
+		if (length + count > packet.length) return false;
+		System.arraycopy(bytes, 0, packet, length, count);
+		length += count;
+		return true;
+	}
+	
+	private void writeShort(int value) {
+		packet[length++] = (byte) (value >>> 8);
+		packet[length++] = (byte) value;
+	}
+	
+	/**
+	 * Forget the names written after the first count ones.
+	 */
+	private void truncateNames(int count) {
+		for (int i = count; i < nameCount; i++) {
+			names[i] = null;
+		}
+		nameCount = count;
+	}
+	
+	/**
+	 * Get the label offsets array of the next name, growing the arrays if needed.
+	 * The arrays are kept across packets, so this only allocates while warming up.
+	 */
+	private int[] reserve(int labels) {
+		if (nameCount == names.length) {
+			EncodedName[] grownNames = new EncodedName[nameCount * 2];
+			System.arraycopy(names, 0, grownNames, 0, nameCount);
+			names = grownNames;
+			int[][] grownOffsets = new int[nameCount * 2][];
+			System.arraycopy(labelOffsets, 0, grownOffsets, 0, nameCount);
+			labelOffsets = grownOffsets;
+		}
+		if (labelOffsets[nameCount] == null || labelOffsets[nameCount].length < labels) {
+			labelOffsets[nameCount] = new int[Math.max(labels, 8)];
+		}
+		return labelOffsets[nameCount];
+	}
+	
+	private static EncodedName encode(String name) {
+		DNSBuffer buffer = new DNSBuffer(DNSBuffer.nameByteLength(name) + 1);
+		buffer.writeName(name);
+		return new EncodedName(buffer.bytes, buffer.bytes.length);
+	}
+	
+	/**
+	 * Compare two uncompressed name suffixes, ignoring the case of ASCII letters.
+	 */
+	private static boolean suffixEquals(EncodedName a, int labelA, EncodedName b, int labelB) {
+		int offsetA = a.labels[labelA];
+		int offsetB = b.labels[labelB];
+		int length = a.length - offsetA;
+		if (b.length - offsetB != length) return false;
+		for (int i = 0; i < length; i++) {
+			int x = a.bytes[offsetA + i];
+			int y = b.bytes[offsetB + i];
+			if (x >= 'A' && x <= 'Z') x += 'a' - 'A';
+			if (y >= 'A' && y <= 'Z') y += 'a' - 'A';
+			if (x != y) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * An uncompressed encoded name, possibly followed by the rest of a question,
+	 * along with the offsets of its labels.
+	 */
+	private static class EncodedName {
+		final byte[] bytes;
+		// the length of the name including the terminating zero
+		final int length;
+		final int[] labels;
+		
+		EncodedName(byte[] bytes, int length) {
+			this.bytes = bytes;
+			this.length = length;
+			int count = 0;
+			for (int offset = 0; bytes[offset] != 0; offset += (bytes[offset] & 0xFF) + 1) {
+				count++;
+			}
+			labels = new int[count];
+			int offset = 0;
+			for (int i = 0; i < count; i++) {
+				labels[i] = offset;
+				offset += (bytes[offset] & 0xFF) + 1;
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.JJ.multicastcompat;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Schedules continuous multicast DNS queries.
+ * <p>
+ * After a short random delay the first query is sent, then the interval
+ * between two queries doubles every time until it reaches one hour.
+ * see: https://tools.ietf.org/html/rfc6762 section 5.2
+ * <p>
+ * A query which another host has just asked for us counts as sent.
+ * Answers alone do not, as other responders would only answer our query.
+ * see: https://tools.ietf.org/html/rfc6762 section 7.3
+ * <p>
+ * All times are milliseconds of a monotonic clock supplied by the caller.
+ */
+class QueryScheduler {
+	
+	static final long INITIAL_INTERVAL = 1000;
+	static final long MAX_INTERVAL = 60 * 60 * 1000;
+	private static final int MIN_INITIAL_DELAY = 20;
+	private static final int MAX_INITIAL_DELAY = 120;
+	// queries due this soon are sent along with a due one to share its packet
+	private static final long AGGREGATION_WINDOW = INITIAL_INTERVAL / 2;
+	
+	private final Map<String, Query> queries = new LinkedHashMap<>();
+	private final Random random = new Random();
+	
+	/**
+	 * Start querying for a name. Adding a name which is already scheduled
+	 * restarts its schedule.
+	 */
+	synchronized void add(String name, long now) {
+		Query query = new Query();
+		query.interval = INITIAL_INTERVAL;
+		query.next = now + MIN_INITIAL_DELAY + random.nextInt(MAX_INITIAL_DELAY - MIN_INITIAL_DELAY + 1);
+		queries.put(name, query);
+	}
+	
+	synchronized void remove(String name) {
+		queries.remove(name);
+	}
+	
+	synchronized void clear() {
+		queries.clear();
+	}
+	
+	synchronized boolean contains(String name) {
+		return queries.containsKey(name);
+	}
+	
+	/**
+	 * Collect the names which need to be queried now and advance their schedule.
+	 * If any query is due, queries which would be due shortly after are
+	 * pulled forward so that they can share one packet.
+	 *
+	 * @param due receives the due names, so that the caller can reuse one list
+	 */
+	synchronized void due(long now, List<String> due) {
+		if (nextDeadline() > now) return;
+		for (Map.Entry<String, Query> entry : queries.entrySet()) {
+			Query query = entry.getValue();
+			if (query.next > now + AGGREGATION_WINDOW) continue;
+			due.add(entry.getKey());
+			query.next = now + query.interval;
+			query.interval = Math.min(query.interval * 2, MAX_INTERVAL);
+		}
+	}
+	
+	/**
+	 * Another host has multicast the question for a name,
+	 * its responses will answer our query as well.
+	 * Our query counts as sent now if it is due within the second half
+	 * of its current interval. Earlier observations are ignored, so that queries
+	 * of other hosts never push ours further out than our own schedule would.
+	 *
+	 * @return whether our query has been suppressed
+	 */
+	synchronized boolean questionObserved(String name, long now) {
+		Query query = queries.get(name);
+		if (query == null) return false;
+		long interval = Math.max(query.interval / 2, INITIAL_INTERVAL);
+		if (query.next - now > interval / 2) return false;
+		query.next = now + query.interval;
+		query.interval = Math.min(query.interval * 2, MAX_INTERVAL);
+		return true;
+	}
+	
+	/**
+	 * @return the time of the next scheduled query, or Long.MAX_VALUE if there is none
+	 */
+	synchronized long nextDeadline() {
+		long next = Long.MAX_VALUE;
+		for (Query query : queries.values()) {
+			next = Math.min(next, query.next);
+		}
+		return next;
+	}
+	
+	private static class Query {
+		long next;
+		long interval;
+	}
+}
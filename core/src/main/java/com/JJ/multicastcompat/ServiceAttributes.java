@@ -0,0 +1,250 @@
+package com.JJ.multicastcompat;
+
+import com.cafbit.netlib.dns.DNSTextRecord;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The TXT attributes of a service, as a compact immutable map for keeping thousands of services around.
+ * <p>
+ * Keys and values are stored alternately in a single array sorted by key, and
+ * all of them are interned through a bounded table shared by every instance:
+ * devices of one model announce the same keys and mostly the same values,
+ * so most strings exist only once however many services are known.
+ * Strings are only added to the table when they are seen a second time and
+ * overwrite older ones when the table is full, so sharing is best effort
+ * and the table never grows.
+ * <p>
+ * Like TXT records, keys are compared ignoring the case of ASCII letters.
+ * Boolean attributes map to null.
+ *
+ * @see DNSTextRecord
+ */
+public final class ServiceAttributes extends AbstractMap<String, String> {
+	
+	public static final ServiceAttributes EMPTY = new ServiceAttributes(new String[0]);
+	
+	private static final int TABLE_SIZE = 8192;
+	private static final int PROBES = 4;
+	
+	// interned strings, an open addressing table which overwrites entries when a probe sequence is full.
+	// strings are immutable, so racy reads and writes of single slots are safe.
+	private static final String[] table = new String[TABLE_SIZE];
+	// hashes of strings seen once, a string is only interned when it is seen again.
+	// this keeps values unique to one service, like ids, from evicting shared ones.
+	private static final int[] seen = new int[TABLE_SIZE];
+	
+	private static final Comparator<String> KEY_ORDER = new Comparator<String>() {
+		@Override
+		public int compare(String a, String b) {
+			return compareKeys(a, b);
+		}
+	};
+	
+	// key, value, key, value, ... sorted by key
+	private final String[] entries;
+	private Set<Map.Entry<String, String>> entrySet;
+	
+	private ServiceAttributes(String[] entries) {
+		this.entries = entries;
+	}
+	
+	/**
+	 * Get the compact form of a map. Of keys which only differ in case, one is kept.
+	 *
+	 * @param attributes the attributes, may be null
+	 * @return the attributes themselves if they are compact already
+	 */
+	public static ServiceAttributes of(Map<String, String> attributes) {
+		if (attributes instanceof ServiceAttributes) return (ServiceAttributes) attributes;
+		if (attributes == null || attributes.isEmpty()) return EMPTY;
+		String[] keys = new String[attributes.size()];
+		int keyCount = 0;
+		for (String key : attributes.keySet()) {
+			if (key != null) keys[keyCount++] = key;
+		}
+		// text records iterate in key order already, which makes this linear
+		Arrays.sort(keys, 0, keyCount, KEY_ORDER);
+		String[] entries = new String[keyCount * 2];
+		int count = 0;
+		for (int i = 0; i < keyCount; i++) {
+			String key = keys[i];
+			if (count > 0 && compareKeys(entries[count - 2], key) == 0) continue;
+			entries[count++] = intern(key);
+			entries[count++] = intern(attributes.get(key));
+		}
+		return new ServiceAttributes(count == entries.length ? entries : Arrays.copyOf(entries, count));
+	}
+	
+	/**
+	 * Combine two maps, preferring the values of update.
+	 */
+	public static ServiceAttributes merge(Map<String, String> base, Map<String, String> update) {
+		ServiceAttributes a = of(base);
+		ServiceAttributes b = of(update);
+		if (b.entries.length == 0) return a;
+		if (a.entries.length == 0) return b;
+		String[] entries = new String[a.entries.length + b.entries.length];
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while (i < a.entries.length || j < b.entries.length) {
+			int cmp;
+			if (i == a.entries.length) {
+				cmp = 1;
+			} else if (j == b.entries.length) {
+				cmp = -1;
+			} else {
+				cmp = compareKeys(a.entries[i], b.entries[j]);
+			}
+			if (cmp < 0) {
+				entries[count++] = a.entries[i];
+				entries[count++] = a.entries[i + 1];
+				i += 2;
+			} else {
+				entries[count++] = b.entries[j];
+				entries[count++] = b.entries[j + 1];
+				j += 2;
+				if (cmp == 0) i += 2;
+			}
+		}
+		return new ServiceAttributes(count == entries.length ? entries : Arrays.copyOf(entries, count));
+	}
+	
+	/**
+	 * Get the shared instance of a string, e.g. a service type.
+	 */
+	static String intern(String string) {
+		if (string == null) return null;
+		int hash = string.hashCode();
+		hash ^= hash >>> 16;
+		int slot = hash & (TABLE_SIZE - 1);
+		int free = -1;
+		for (int i = 0; i < PROBES; i++) {
+			int index = (slot + i) & (TABLE_SIZE - 1);
+			String interned = table[index];
+			if (interned == null) {
+				if (free == -1) free = index;
+				continue;
+			}
+			if (interned.equals(string)) return interned;
+		}
+		if (seen[slot] != hash) {
+			seen[slot] = hash;
+			return string;
+		}
+		table[free == -1 ? slot : free] = string;
+		return string;
+	}
+	
+	@Override
+	public int size() {
+		return entries.length / 2;
+	}
+	
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof String && find((String) key) >= 0;
+	}
+	
+	@Override
+	public String get(Object key) {
+		if (!(key instanceof String)) return null;
+		int index = find((String) key);
+		return index < 0 ? null : entries[index + 1];
+	}
+	
+	/**
+	 * Compare with a received TXT record without decoding it.
+	 *
+	 * @return whether the record has exactly these attributes
+	 */
+	public boolean entriesEqual(DNSTextRecord record) {
+		if (record.size() != size()) return false;
+		for (int i = 0; i < entries.length; i += 2) {
+			if (!record.containsEntry(entries[i], entries[i + 1])) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * @return the entries in key order
+	 */
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Map.Entry<String, String>>() {
+				@Override
+				public Iterator<Map.Entry<String, String>> iterator() {
+					return new Iterator<Map.Entry<String, String>>() {
+						private int index = 0;
+						
+						@Override
+						public boolean hasNext() {
+							return index < entries.length;
+						}
+						
+						@Override
+						public Map.Entry<String, String> next() {
+							if (index >= entries.length) throw new NoSuchElementException();
+							Map.Entry<String, String> entry = new SimpleImmutableEntry<>(entries[index], entries[index + 1]);
+							index += 2;
+							return entry;
+						}
+						
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+				
+				@Override
+				public int size() {
+					return entries.length / 2;
+				}
+			};
+		}
+		return entrySet;
+	}
+	
+	/**
+	 * @return the index of the key in entries, or -1
+	 */
+	private int find(String key) {
+		int low = 0;
+		int high = entries.length / 2 - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int cmp = compareKeys(entries[middle * 2], key);
+			if (cmp < 0) {
+				low = middle + 1;
+			} else if (cmp > 0) {
+				high = middle - 1;
+			} else {
+				return middle * 2;
+			}
+		}
+		return -1;
+	}
+	
+	private static int compareKeys(String a, String b) {
+		int common = Math.min(a.length(), b.length());
+		for (int i = 0; i < common; i++) {
+			int cmp = toLower(a.charAt(i)) - toLower(b.charAt(i));
+			if (cmp != 0) return cmp;
+		}
+		return a.length() - b.length();
+	}
+	
+	private static int toLower(int c) {
+		return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+	}
+}
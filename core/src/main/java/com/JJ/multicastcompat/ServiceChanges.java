@@ -0,0 +1,92 @@
+package com.JJ.multicastcompat;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The fields a merge changed in a known service.
+ * <p>
+ * Attributes are diffed per key: a key is either added, changed or removed.
+ * Keys are only removed by a complete TXT record, see
+ * {@link MulticastServiceInfo#attributesComplete}.
+ *
+ * @see MulticastServiceInfo#diff(MulticastServiceInfo, MulticastServiceInfo)
+ */
+public class ServiceChanges {
+	
+	public enum Field {
+		HOST,
+		HOSTNAME,
+		ADDRESSES,
+		NETWORK_INTERFACE,
+		SERVICE_NAME,
+		SERVICE_TYPE,
+		PORT,
+		ATTRIBUTES
+	}
+	
+	/**
+	 * Nothing changed.
+	 */
+	public static final ServiceChanges NONE = new ServiceChanges(0, Collections.<String>emptySet(),
+			Collections.<String>emptySet(), Collections.<String>emptySet());
+	
+	private final int fields;
+	private final Set<String> addedAttributes;
+	private final Set<String> changedAttributes;
+	private final Set<String> removedAttributes;
+	
+	ServiceChanges(int fields, Set<String> addedAttributes, Set<String> changedAttributes, Set<String> removedAttributes) {
+		this.fields = fields;
+		this.addedAttributes = addedAttributes;
+		this.changedAttributes = changedAttributes;
+		this.removedAttributes = removedAttributes;
+	}
+	
+	static int bit(Field field) {
+		return 1 << field.ordinal();
+	}
+	
+	public boolean isEmpty() {
+		return fields == 0;
+	}
+	
+	public boolean contains(Field field) {
+		return (fields & bit(field)) != 0;
+	}
+	
+	public Set<Field> getFields() {
+		Set<Field> set = EnumSet.noneOf(Field.class);
+		for (Field field : Field.values()) {
+			if (contains(field)) set.add(field);
+		}
+		return set;
+	}
+	
+	/**
+	 * @return the attribute keys the known service did not have
+	 */
+	public Set<String> getAddedAttributes() {
+		return addedAttributes;
+	}
+	
+	/**
+	 * @return the attribute keys whose value changed
+	 */
+	public Set<String> getChangedAttributes() {
+		return changedAttributes;
+	}
+	
+	/**
+	 * @return the attribute keys of the known service which a complete TXT record dropped
+	 */
+	public Set<String> getRemovedAttributes() {
+		return removedAttributes;
+	}
+	
+	@Override
+	public String toString() {
+		return getFields() + " added=" + addedAttributes + " changed=" + changedAttributes + " removed=" + removedAttributes;
+	}
+}
@@ -0,0 +1,515 @@
+package com.JJ.multicastcompat;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The discovered services, keyed by their full instance name, e.g. "printer._ipp._tcp.local".
+ * <p>
+ * Besides the instance name, services are indexed by service type, by host
+ * (the host and every address) and by attribute, so queries like "all
+ * _ipp._tcp instances with Color=T" only look at the matching services.
+ * <p>
+ * Reads do not lock and may run concurrently with writes, which are
+ * serialized. A reader may miss a service which is being added or still
+ * see one which is being removed, like the iterators of ConcurrentHashMap,
+ * but the services it gets always match the query.
+ * <p>
+ * Every change increments the version of the store. Consumers which poll,
+ * e.g. a UI or a sync to a backend, ask for the {@link #changesSince(long) changes}
+ * since the version they saw last, which costs O(changes) instead of
+ * comparing all services. The most recent changes are kept in a bounded log
+ * for this; consumers which fall further behind get all services again.
+ * {@link #snapshot()} returns an immutable copy of all services with its version.
+ * <p>
+ * Instance names and attribute keys are compared ignoring case, like DNS does.
+ * Services without a name or type can not be stored.
+ */
+public class ServiceStore {
+	
+	/**
+	 * The number of changes kept for changesSince() by default.
+	 */
+	public static final int DEFAULT_CHANGE_LOG_CAPACITY = 4096;
+	
+	// index value of boolean attributes, which have no value
+	private static final Object NO_VALUE = new Object();
+	
+	private final Map<String, MulticastServiceInfo> services = new ConcurrentHashMap<>();
+	// the recent changes by version, written before the version is published
+	private final ConcurrentSkipListMap<Long, Change> changes = new ConcurrentSkipListMap<>();
+	private final int changeLogCapacity;
+	// guarded by this
+	private int changeCount = 0;
+	private volatile long version = 0;
+	// changes up to this version have been dropped from the log
+	private volatile long droppedVersion = 0;
+	private volatile Snapshot snapshot = new Snapshot(0, Collections.<String, MulticastServiceInfo>emptyMap());
+	// instance names by query name
+	private final Map<String, Set<String>> byType = new ConcurrentHashMap<>();
+	// instance names by host and address
+	private final Map<InetAddress, Set<String>> byHost = new ConcurrentHashMap<>();
+	// instance names by lower case attribute key and value
+	private final Map<String, Map<Object, Set<String>>> byAttribute = new ConcurrentHashMap<>();
+	
+	public ServiceStore() {
+		this(DEFAULT_CHANGE_LOG_CAPACITY);
+	}
+	
+	/**
+	 * @param changeLogCapacity the number of changes kept for changesSince()
+	 */
+	public ServiceStore(int changeLogCapacity) {
+		if (changeLogCapacity < 1) throw new IllegalArgumentException("change log capacity must be positive");
+		this.changeLogCapacity = changeLogCapacity;
+	}
+	
+	/**
+	 * @return the key of a service in this store, or null if its name or type is missing
+	 */
+	public static String getInstanceName(MulticastServiceInfo serviceInfo) {
+		return getInstanceName(serviceInfo.serviceName, serviceInfo.serviceType);
+	}
+	
+	/**
+	 * @param serviceName the service name, e.g. "Printer"
+	 * @param serviceType the service type, e.g. "_ipp._tcp."
+	 * @return the lower case instance name, e.g. "printer._ipp._tcp.local", or null if either is missing
+	 */
+	public static String getInstanceName(String serviceName, String serviceType) {
+		if (serviceName == null || serviceType == null) return null;
+		return serviceName.toLowerCase(Locale.US) + "." + toTypeKey(serviceType);
+	}
+	
+	public MulticastServiceInfo get(String instanceName) {
+		return services.get(instanceName.toLowerCase(Locale.US));
+	}
+	
+	/**
+	 * Add a service or replace the service with the same instance name.
+	 *
+	 * @return the replaced service, or null if the service is new
+	 * @throws IllegalArgumentException if the service has no name or type
+	 */
+	public synchronized MulticastServiceInfo put(MulticastServiceInfo serviceInfo) {
+		String instanceName = getInstanceName(serviceInfo);
+		if (instanceName == null) throw new IllegalArgumentException("service without name or type");
+		MulticastServiceInfo previous = services.get(instanceName);
+		// index first and unindex last, so readers never miss a service which stays
+		index(instanceName, serviceInfo);
+		services.put(instanceName, serviceInfo);
+		if (previous != null) unindex(instanceName, previous, serviceInfo);
+		log(instanceName, serviceInfo, previous != null);
+		return previous;
+	}
+	
+	/**
+	 * @return the removed service, or null if there was none
+	 */
+	public synchronized MulticastServiceInfo remove(String instanceName) {
+		instanceName = instanceName.toLowerCase(Locale.US);
+		MulticastServiceInfo previous = services.remove(instanceName);
+		if (previous == null) return null;
+		unindex(instanceName, previous, null);
+		log(instanceName, null, true);
+		return previous;
+	}
+	
+	/**
+	 * Remove all services, every one of them is reported as removed by changesSince().
+	 */
+	public synchronized void clear() {
+		for (String instanceName : services.keySet()) {
+			log(instanceName, null, true);
+		}
+		services.clear();
+		byType.clear();
+		byHost.clear();
+		byAttribute.clear();
+	}
+	
+	public int size() {
+		return services.size();
+	}
+	
+	/**
+	 * @return the number of changes so far, starting at 0 for an empty store
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Get all services along with the version they belong to.
+	 * The snapshot is only rebuilt if the store changed since the last one,
+	 * from the last snapshot and the changes since.
+	 */
+	public Snapshot snapshot() {
+		Snapshot last = snapshot;
+		long current = version;
+		if (last.version == current) return last;
+		Map<String, MulticastServiceInfo> services = null;
+		long snapshotVersion = current;
+		if (last.version >= droppedVersion) {
+			services = new HashMap<>(last.services);
+			for (Change change : changes.subMap(last.version, false, current, true).values()) {
+				if (change.serviceInfo == null) {
+					services.remove(change.instanceName);
+				} else {
+					services.put(change.instanceName, change.serviceInfo);
+				}
+			}
+			// the log might have been cut while it was read
+			if (last.version < droppedVersion) services = null;
+		}
+		if (services == null) {
+			// the changes since the last snapshot have been dropped from the log
+			synchronized (this) {
+				services = new HashMap<>(this.services);
+				snapshotVersion = version;
+			}
+		}
+		Snapshot built = new Snapshot(snapshotVersion, Collections.unmodifiableMap(services));
+		// another thread might store an older snapshot over this one, which only costs a rebuild
+		if (snapshot.version < built.version) snapshot = built;
+		return built;
+	}
+	
+	/**
+	 * Get the services added, updated and removed since a version, e.g. the one of the
+	 * last call. Several changes of one service are combined, a service added and
+	 * removed again is not reported at all.
+	 * <p>
+	 * If the changes since the version have been dropped from the log already,
+	 * all services are reported as added and {@link Changes#isReset()} is set:
+	 * the consumer has to drop all services it knows which are not among them.
+	 *
+	 * @param since the version known to the caller, 0 for all services
+	 */
+	public Changes changesSince(long since) {
+		long current = version;
+		if (since == current) return new Changes(current, false, Collections.<String, MulticastServiceInfo>emptyMap(),
+				Collections.<String, MulticastServiceInfo>emptyMap(), Collections.<String>emptySet());
+		if (since >= droppedVersion && since < current) {
+			Map<String, Change> first = new HashMap<>();
+			Map<String, Change> last = new LinkedHashMap<>();
+			for (Change change : changes.subMap(since, false, current, true).values()) {
+				if (!first.containsKey(change.instanceName)) first.put(change.instanceName, change);
+				last.put(change.instanceName, change);
+			}
+			// the log might have been cut while it was read
+			if (since >= droppedVersion) {
+				Map<String, MulticastServiceInfo> added = new LinkedHashMap<>();
+				Map<String, MulticastServiceInfo> updated = new LinkedHashMap<>();
+				Set<String> removed = new LinkedHashSet<>();
+				for (Change change : last.values()) {
+					boolean existed = first.get(change.instanceName).existed;
+					if (change.serviceInfo == null) {
+						if (existed) removed.add(change.instanceName);
+					} else if (existed) {
+						updated.put(change.instanceName, change.serviceInfo);
+					} else {
+						added.put(change.instanceName, change.serviceInfo);
+					}
+				}
+				return new Changes(current, false, Collections.unmodifiableMap(added),
+						Collections.unmodifiableMap(updated), Collections.unmodifiableSet(removed));
+			}
+		}
+		Snapshot all = snapshot();
+		return new Changes(all.version, true, all.services,
+				Collections.<String, MulticastServiceInfo>emptyMap(), Collections.<String>emptySet());
+	}
+	
+	/**
+	 * @return a live, unmodifiable view of all services
+	 */
+	public Collection<MulticastServiceInfo> getAll() {
+		return Collections.unmodifiableCollection(services.values());
+	}
+	
+	/**
+	 * @param serviceType the service type, e.g. "_ipp._tcp."
+	 */
+	public List<MulticastServiceInfo> findByType(String serviceType) {
+		return collect(byType.get(toTypeKey(serviceType)), null, null, null);
+	}
+	
+	/**
+	 * @return the services with the given host or address
+	 */
+	public List<MulticastServiceInfo> findByHost(InetAddress host) {
+		return collect(byHost.get(host), host, null, null);
+	}
+	
+	/**
+	 * @param value the value, null for a boolean attribute
+	 */
+	public List<MulticastServiceInfo> findByAttribute(String key, String value) {
+		return collect(attributeIndex(key, value), null, key, value);
+	}
+	
+	/**
+	 * Find the services of a type with an attribute, e.g. all "_ipp._tcp." instances with Color=T.
+	 * Only the smaller of the two index entries is looked at.
+	 *
+	 * @param value the value, null for a boolean attribute
+	 */
+	public List<MulticastServiceInfo> find(String serviceType, String key, String value) {
+		String typeKey = toTypeKey(serviceType);
+		Set<String> ofType = byType.get(typeKey);
+		Set<String> withAttribute = attributeIndex(key, value);
+		if (ofType == null || withAttribute == null) return new ArrayList<>();
+		if (ofType.size() < withAttribute.size()) return collect(ofType, null, key, value);
+		List<MulticastServiceInfo> found = new ArrayList<>();
+		for (String instanceName : withAttribute) {
+			// the type is the end of the instance name
+			int nameLength = instanceName.length() - typeKey.length() - 1;
+			if (nameLength < 0 || !instanceName.endsWith(typeKey) || instanceName.charAt(nameLength) != '.') continue;
+			MulticastServiceInfo serviceInfo = services.get(instanceName);
+			if (serviceInfo != null && hasAttribute(serviceInfo, key, value)) found.add(serviceInfo);
+		}
+		return found;
+	}
+	
+	/**
+	 * Look up indexed instance names, skipping services which have been removed or changed meanwhile.
+	 */
+	private List<MulticastServiceInfo> collect(Set<String> instanceNames, InetAddress host, String key, String value) {
+		List<MulticastServiceInfo> found = new ArrayList<>();
+		if (instanceNames == null) return found;
+		for (String instanceName : instanceNames) {
+			MulticastServiceInfo serviceInfo = services.get(instanceName);
+			if (serviceInfo == null) continue;
+			if (host != null && !hasHost(serviceInfo, host)) continue;
+			if (key != null && !hasAttribute(serviceInfo, key, value)) continue;
+			found.add(serviceInfo);
+		}
+		return found;
+	}
+	
+	private Set<String> attributeIndex(String key, String value) {
+		Map<Object, Set<String>> values = byAttribute.get(key.toLowerCase(Locale.US));
+		if (values == null) return null;
+		return values.get(value == null ? NO_VALUE : value);
+	}
+	
+	private void index(String instanceName, MulticastServiceInfo serviceInfo) {
+		add(byType, toTypeKey(serviceInfo.serviceType), instanceName);
+		if (serviceInfo.host != null) add(byHost, serviceInfo.host, instanceName);
+		if (serviceInfo.addresses != null) {
+			for (InetAddress address : serviceInfo.addresses) {
+				add(byHost, address, instanceName);
+			}
+		}
+		if (serviceInfo.attributes != null) {
+			for (Map.Entry<String, String> attribute : serviceInfo.attributes.entrySet()) {
+				String key = attribute.getKey().toLowerCase(Locale.US);
+				Map<Object, Set<String>> values = byAttribute.get(key);
+				if (values == null) {
+					values = new ConcurrentHashMap<>(4);
+					byAttribute.put(ServiceAttributes.intern(key), values);
+				}
+				add(values, attribute.getValue() == null ? NO_VALUE : attribute.getValue(), instanceName);
+			}
+		}
+	}
+	
+	/**
+	 * Remove the index entries of a service which the replacing service does not have.
+	 *
+	 * @param replacement the replacing service, or null if the service has been removed
+	 */
+	private void unindex(String instanceName, MulticastServiceInfo serviceInfo, MulticastServiceInfo replacement) {
+		if (replacement == null) remove(byType, toTypeKey(serviceInfo.serviceType), instanceName);
+		if (serviceInfo.host != null && (replacement == null || !hasHost(replacement, serviceInfo.host))) {
+			remove(byHost, serviceInfo.host, instanceName);
+		}
+		if (serviceInfo.addresses != null) {
+			for (InetAddress address : serviceInfo.addresses) {
+				if (replacement == null || !hasHost(replacement, address)) remove(byHost, address, instanceName);
+			}
+		}
+		if (serviceInfo.attributes != null) {
+			for (Map.Entry<String, String> attribute : serviceInfo.attributes.entrySet()) {
+				String key = attribute.getKey();
+				String value = attribute.getValue();
+				if (replacement != null && hasAttribute(replacement, key, value)) continue;
+				Map<Object, Set<String>> values = byAttribute.get(key.toLowerCase(Locale.US));
+				if (values == null) continue;
+				remove(values, value == null ? NO_VALUE : value, instanceName);
+				if (values.isEmpty()) byAttribute.remove(key.toLowerCase(Locale.US));
+			}
+		}
+	}
+	
+	/**
+	 * Append a change to the log and publish the new version, dropping the oldest change if the log is full.
+	 *
+	 * @param serviceInfo the service after the change, null if it has been removed
+	 * @param existed     whether the service existed before the change
+	 */
+	private void log(String instanceName, MulticastServiceInfo serviceInfo, boolean existed) {
+		long next = version + 1;
+		changes.put(next, new Change(instanceName, serviceInfo, existed));
+		if (++changeCount > changeLogCapacity) {
+			droppedVersion = changes.pollFirstEntry().getKey();
+			changeCount--;
+		}
+		version = next;
+	}
+	
+	private static <K> void add(Map<K, Set<String>> index, K key, String instanceName) {
+		Set<String> instanceNames = index.get(key);
+		if (instanceNames == null) {
+			instanceNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(4));
+			index.put(key, instanceNames);
+		}
+		instanceNames.add(instanceName);
+	}
+	
+	private static <K> void remove(Map<K, Set<String>> index, K key, String instanceName) {
+		Set<String> instanceNames = index.get(key);
+		if (instanceNames == null) return;
+		instanceNames.remove(instanceName);
+		if (instanceNames.isEmpty()) index.remove(key);
+	}
+	
+	private static boolean hasHost(MulticastServiceInfo serviceInfo, InetAddress host) {
+		return host.equals(serviceInfo.host) || (serviceInfo.addresses != null && serviceInfo.addresses.contains(host));
+	}
+	
+	private static boolean hasAttribute(MulticastServiceInfo serviceInfo, String key, String value) {
+		Map<String, String> attributes = serviceInfo.attributes;
+		if (attributes == null) return false;
+		// compact and TXT attributes ignore the case of keys, other maps may not
+		String actual = attributes.get(key);
+		if (actual == null && !attributes.containsKey(key)) {
+			for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+				if (attribute.getKey().equalsIgnoreCase(key)) return equal(attribute.getValue(), value);
+			}
+			return false;
+		}
+		return equal(actual, value);
+	}
+	
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+	
+	/**
+	 * NsdManager reports types like "_ipp._tcp." when browsing and "._ipp._tcp" when resolving.
+	 */
+	private static String toTypeKey(String serviceType) {
+		if (serviceType.startsWith(".")) serviceType = serviceType.substring(1);
+		return MulticastSocket.toQueryName(serviceType);
+	}
+	
+	/**
+	 * All services of a store at one version.
+	 */
+	public static final class Snapshot {
+		private final long version;
+		private final Map<String, MulticastServiceInfo> services;
+		
+		private Snapshot(long version, Map<String, MulticastServiceInfo> services) {
+			this.version = version;
+			this.services = services;
+		}
+		
+		public long getVersion() {
+			return version;
+		}
+		
+		/**
+		 * @return the services by instance name, unmodifiable
+		 */
+		public Map<String, MulticastServiceInfo> getServices() {
+			return services;
+		}
+	}
+	
+	/**
+	 * The services which changed between two versions of a store.
+	 */
+	public static final class Changes {
+		private final long version;
+		private final boolean reset;
+		private final Map<String, MulticastServiceInfo> added;
+		private final Map<String, MulticastServiceInfo> updated;
+		private final Set<String> removed;
+		
+		private Changes(long version, boolean reset, Map<String, MulticastServiceInfo> added,
+		                Map<String, MulticastServiceInfo> updated, Set<String> removed) {
+			this.version = version;
+			this.reset = reset;
+			this.added = added;
+			this.updated = updated;
+			this.removed = removed;
+		}
+		
+		/**
+		 * @return the version these changes lead to, pass it to the next changesSince() call
+		 */
+		public long getVersion() {
+			return version;
+		}
+		
+		/**
+		 * @return whether the changes could not be determined and all services are reported as added
+		 */
+		public boolean isReset() {
+			return reset;
+		}
+		
+		/**
+		 * @return the new services by instance name
+		 */
+		public Map<String, MulticastServiceInfo> getAdded() {
+			return added;
+		}
+		
+		/**
+		 * @return the changed services by instance name, as they are now
+		 */
+		public Map<String, MulticastServiceInfo> getUpdated() {
+			return updated;
+		}
+		
+		/**
+		 * @return the instance names of the removed services
+		 */
+		public Set<String> getRemoved() {
+			return removed;
+		}
+		
+		public boolean isEmpty() {
+			return !reset && added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+		}
+	}
+	
+	private static final class Change {
+		final String instanceName;
+		// the service after the change, null if it has been removed
+		final MulticastServiceInfo serviceInfo;
+		// whether the service existed before the change
+		final boolean existed;
+		
+		Change(String instanceName, MulticastServiceInfo serviceInfo, boolean existed) {
+			this.instanceName = instanceName;
+			this.serviceInfo = serviceInfo;
+			this.existed = existed;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.JJ.multicastcompat;
+
+import com.cafbit.netlib.InterfaceUtil;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A transport based on a blocking java.net.MulticastSocket, available on all API levels.
+ * The socket is dual-stack, so it joins the IPv4 and IPv6 groups at once.
+ */
+class SocketTransport implements MulticastTransport {
+	
+	private final List<NetworkInterface> interfaces;
+	private final List<InetAddress> groups;
+	private final int port;
+	private final int ttl;
+	private final List<Membership> memberships = new ArrayList<>();
+	private java.net.MulticastSocket multicastSocket;
+	
+	SocketTransport(List<NetworkInterface> interfaces, List<InetAddress> groups, int port, int ttl) {
+		this.interfaces = interfaces;
+		this.groups = groups;
+		this.port = port;
+		this.ttl = ttl;
+	}
+	
+	@Override
+	public void open() throws IOException {
+		memberships.clear();
+		multicastSocket = new java.net.MulticastSocket(port);
+		multicastSocket.setTimeToLive(ttl);
+		multicastSocket.setReuseAddress(true);
+		for (InetAddress group : groups) {
+			InetSocketAddress groupAddress = new InetSocketAddress(group, port);
+			for (NetworkInterface networkInterface : interfaces) {
+				if (!InterfaceUtil.hasAddressOfFamily(networkInterface, group)) continue;
+				try {
+					multicastSocket.joinGroup(groupAddress, networkInterface);
+				} catch (IOException e) {
+					// e.g. IPv6 disabled on this interface, continue with the others
+					continue;
+				}
+				memberships.add(new Membership(groupAddress, networkInterface));
+			}
+		}
+		if (memberships.isEmpty()) {
+			throw new IOException("could not join any multicast group");
+		}
+	}
+	
+	@Override
+	public NetworkInterface receive(DatagramPacket packet, long timeout) throws IOException {
+		multicastSocket.setSoTimeout((int) Math.max(1, timeout));
+		packet.setLength(packet.getData().length - packet.getOffset());
+		multicastSocket.receive(packet);
+		return InterfaceUtil.findInterface(packet.getAddress(), interfaces);
+	}
+	
+	@Override
+	public void send(byte[] data, int length) throws IOException {
+		for (int i = 0; i < memberships.size(); i++) {
+			Membership membership = memberships.get(i);
+			multicastSocket.setNetworkInterface(membership.networkInterface);
+			membership.packet.setData(data, 0, length);
+			multicastSocket.send(membership.packet);
+		}
+	}
+	
+	/**
+	 * A blocking socket can only be woken up by closing it.
+	 */
+	@Override
+	public void wakeup() {
+		close();
+	}
+	
+	@Override
+	public void close() {
+		if (multicastSocket != null) multicastSocket.close();
+	}
+	
+	@Override
+	public boolean isClosed() {
+		return multicastSocket == null || multicastSocket.isClosed();
+	}
+	
+	private static class Membership {
+		final InetSocketAddress group;
+		final NetworkInterface networkInterface;
+		// addressed to the group once, only the data is swapped for every send
+		final DatagramPacket packet;
+		
+		Membership(InetSocketAddress group, NetworkInterface networkInterface) {
+			this.group = group;
+			this.networkInterface = networkInterface;
+			this.packet = new DatagramPacket(new byte[0], 0, group);
+		}
+	}
+}
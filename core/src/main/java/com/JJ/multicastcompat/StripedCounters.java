@@ -0,0 +1,76 @@
+package com.JJ.multicastcompat;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed number of long counters which many threads can add to without contending.
+ * <p>
+ * Every thread adds to one of several stripes picked by its id, reading a
+ * counter sums it over all stripes. The stripes are padded apart, so threads
+ * on different cores do not bounce a cache line between them. Adding never
+ * allocates, which makes these counters cheap enough to always be enabled.
+ * <p>
+ * This stands in for java.util.concurrent.atomic.LongAdder, which requires
+ * Android API level 24. Sums are not atomic snapshots across counters.
+ */
+class StripedCounters {
+	
+	// longs per 64 byte cache line
+	private static final int PADDING = 8;
+	private static final int MAX_STRIPES = 16;
+	
+	private final int size;
+	private final int stride;
+	private final int mask;
+	private final AtomicLongArray cells;
+	
+	/**
+	 * @param size the number of counters
+	 */
+	StripedCounters(int size) {
+		this.size = size;
+		int stripes = 1;
+		int processors = Math.min(Runtime.getRuntime().availableProcessors(), MAX_STRIPES);
+		while (stripes < processors) stripes <<= 1;
+		mask = stripes - 1;
+		// round up to whole cache lines and keep one line between two stripes
+		stride = (size + PADDING - 1) / PADDING * PADDING + PADDING;
+		cells = new AtomicLongArray(PADDING + stripes * stride);
+	}
+	
+	void increment(int counter) {
+		add(counter, 1);
+	}
+	
+	void add(int counter, long delta) {
+		cells.getAndAdd(PADDING + stripe() * stride + counter, delta);
+	}
+	
+	long sum(int counter) {
+		long sum = 0;
+		for (int i = PADDING + counter; i < cells.length(); i += stride) {
+			sum += cells.get(i);
+		}
+		return sum;
+	}
+	
+	/**
+	 * @return the sums of all counters
+	 */
+	long[] sums() {
+		long[] sums = new long[size];
+		for (int i = 0; i < size; i++) {
+			sums[i] = sum(i);
+		}
+		return sums;
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	private int stripe() {
+		long id = Thread.currentThread().getId();
+		return (int) (id ^ id >>> 16) & mask;
+	}
+}
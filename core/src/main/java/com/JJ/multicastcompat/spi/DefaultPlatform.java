@@ -0,0 +1,98 @@
+package com.JJ.multicastcompat.spi;
+
+import com.cafbit.netlib.InterfaceUtil;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The platform of a plain JVM, e.g. on a Linux gateway.
+ * It needs no multicast lock and uses the first multicast capable
+ * interface unless asked for all of them.
+ * <p>
+ * The interfaces, groups and port can be fixed instead, e.g. to run
+ * against the loopback interface and a private group in tests.
+ */
+public class DefaultPlatform implements Platform {
+	
+	public static final int MDNS_PORT = 5353;
+	
+	/**
+	 * 224.0.0.251 and FF02::FB
+	 */
+	public static final List<InetAddress> MDNS_GROUPS;
+	
+	static {
+		try {
+			MDNS_GROUPS = Collections.unmodifiableList(Arrays.asList(
+					InetAddress.getByAddress(new byte[]{(byte) 224, 0, 0, (byte) 251}),
+					InetAddress.getByAddress(new byte[]{(byte) 0xFF, 0x02, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) 0xFB})));
+		} catch (UnknownHostException e) {
+			// only thrown for addresses of illegal length
+			throw new AssertionError(e);
+		}
+	}
+	
+	private final List<NetworkInterface> interfaces;
+	private final List<InetAddress> groups;
+	private final int port;
+	
+	/**
+	 * Use the multicast capable interfaces of this host and the mDNS groups and port.
+	 */
+	public DefaultPlatform() {
+		this(null, MDNS_GROUPS, MDNS_PORT);
+	}
+	
+	/**
+	 * @param interfaces the interfaces to use however many are asked for, null to find them as usual.
+	 *                   Unlike the found ones, these may include the loopback interface.
+	 * @param groups     the multicast groups to join and query
+	 * @param port       the port to bind to and query
+	 */
+	public DefaultPlatform(List<NetworkInterface> interfaces, List<InetAddress> groups, int port) {
+		if (groups.isEmpty()) throw new IllegalArgumentException("at least one group is needed");
+		this.interfaces = interfaces == null ? null : Collections.unmodifiableList(new ArrayList<>(interfaces));
+		this.groups = Collections.unmodifiableList(new ArrayList<>(groups));
+		this.port = port;
+	}
+	
+	@Override
+	public List<NetworkInterface> getInterfaces(boolean allInterfaces) throws IOException {
+		if (this.interfaces != null) return this.interfaces;
+		List<NetworkInterface> interfaces = InterfaceUtil.getMulticastInterfaces();
+		if (allInterfaces || interfaces.size() <= 1) return interfaces;
+		List<NetworkInterface> first = new ArrayList<>();
+		first.add(interfaces.get(0));
+		return first;
+	}
+	
+	@Override
+	public List<InetAddress> getMulticastGroups() {
+		return groups;
+	}
+	
+	@Override
+	public int getMulticastPort() {
+		return port;
+	}
+	
+	@Override
+	public void acquireMulticastLock() {
+	}
+	
+	@Override
+	public void releaseMulticastLock() {
+	}
+	
+	@Override
+	public boolean supportsMulticastChannels() {
+		return true;
+	}
+}
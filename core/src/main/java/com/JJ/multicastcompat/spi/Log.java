@@ -0,0 +1,96 @@
+package com.JJ.multicastcompat.spi;
+
+import java.util.logging.Level;
+
+/**
+ * The logging facade used throughout the library, modeled after android.util.Log.
+ * <p>
+ * Messages go to java.util.logging unless another {@link Logger} is installed,
+ * the Android library installs one which writes to logcat.
+ */
+public final class Log {
+	
+	public static final int VERBOSE = 2;
+	public static final int DEBUG = 3;
+	public static final int INFO = 4;
+	public static final int WARN = 5;
+	public static final int ERROR = 6;
+	
+	private static volatile Logger logger = new JavaLogger();
+	
+	private Log() {
+	}
+	
+	public static void setLogger(Logger logger) {
+		if (logger == null) throw new NullPointerException();
+		Log.logger = logger;
+	}
+	
+	public static Logger getLogger() {
+		return logger;
+	}
+	
+	public static void v(String tag, String message) {
+		logger.log(VERBOSE, tag, message, null);
+	}
+	
+	public static void v(String tag, String message, Throwable throwable) {
+		logger.log(VERBOSE, tag, message, throwable);
+	}
+	
+	public static void d(String tag, String message) {
+		logger.log(DEBUG, tag, message, null);
+	}
+	
+	public static void d(String tag, String message, Throwable throwable) {
+		logger.log(DEBUG, tag, message, throwable);
+	}
+	
+	public static void i(String tag, String message) {
+		logger.log(INFO, tag, message, null);
+	}
+	
+	public static void w(String tag, String message) {
+		logger.log(WARN, tag, message, null);
+	}
+	
+	public static void w(String tag, String message, Throwable throwable) {
+		logger.log(WARN, tag, message, throwable);
+	}
+	
+	public static void e(String tag, String message) {
+		logger.log(ERROR, tag, message, null);
+	}
+	
+	public static void e(String tag, String message, Throwable throwable) {
+		logger.log(ERROR, tag, message, throwable);
+	}
+	
+	/**
+	 * Logs to java.util.logging, using the tag as logger name.
+	 */
+	private static class JavaLogger implements Logger {
+		@Override
+		public void log(int priority, String tag, String message, Throwable throwable) {
+			java.util.logging.Logger logger = java.util.logging.Logger.getLogger(tag);
+			Level level = toLevel(priority);
+			if (!logger.isLoggable(level)) return;
+			logger.log(level, message, throwable);
+		}
+		
+		private static Level toLevel(int priority) {
+			switch (priority) {
+				case VERBOSE:
+					return Level.FINER;
+				case DEBUG:
+					return Level.FINE;
+				case INFO:
+					return Level.INFO;
+				case WARN:
+					return Level.WARNING;
+				default:
+					return Level.SEVERE;
+			}
+		}
+	}
+}
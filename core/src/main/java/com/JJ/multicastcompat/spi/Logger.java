@@ -0,0 +1,17 @@
+package com.JJ.multicastcompat.spi;
+
+/**
+ * Receives the log output of the library.
+ *
+ * @see Log#setLogger(Logger)
+ */
+public interface Logger {
+	
+	/**
+	 * @param priority  one of the priority constants of {@link Log}, e.g. {@link Log#DEBUG}
+	 * @param tag       the class the message originates from
+	 * @param message   the message
+	 * @param throwable an exception to log along with the message, may be null
+	 */
+	void log(int priority, String tag, String message, Throwable throwable);
+}
@@ -0,0 +1,53 @@
+package com.JJ.multicastcompat.spi;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.List;
+
+/**
+ * Hooks into the platform the multicast engine runs on.
+ * <p>
+ * The engine itself only uses plain Java networking, platforms supply
+ * what differs between them, like the Android multicast lock.
+ *
+ * @see DefaultPlatform
+ */
+public interface Platform {
+	
+	/**
+	 * Select the interfaces to join the multicast group on.
+	 *
+	 * @param allInterfaces whether every eligible interface should be used,
+	 *                      otherwise the platform picks its primary interface
+	 * @return the interfaces, empty if there is no usable network
+	 */
+	List<NetworkInterface> getInterfaces(boolean allInterfaces) throws IOException;
+	
+	/**
+	 * @return the multicast groups to join and query, usually {@link DefaultPlatform#MDNS_GROUPS}
+	 */
+	List<InetAddress> getMulticastGroups();
+	
+	/**
+	 * @return the port to bind to and query, usually {@link DefaultPlatform#MDNS_PORT}
+	 */
+	int getMulticastPort();
+	
+	/**
+	 * Called before the multicast socket is opened, so that the platform
+	 * delivers multicast packets to this process.
+	 */
+	void acquireMulticastLock();
+	
+	/**
+	 * Called after the multicast socket has been closed.
+	 */
+	void releaseMulticastLock();
+	
+	/**
+	 * @return whether java.nio.channels.DatagramChannel supports joining multicast groups,
+	 * otherwise a blocking java.net.MulticastSocket is used
+	 */
+	boolean supportsMulticastChannels();
+}
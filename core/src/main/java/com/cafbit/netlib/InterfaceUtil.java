@@ -0,0 +1,162 @@
+/*
+ * Copyright 2011 David Simmons
+ * http://cafbit.com/entry/testing_multicast_support_on_android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cafbit.netlib;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.JJ.multicastcompat.spi.Log;
+
+/**
+ * Platform independent network interface utility methods
+ * @author simmons
+ */
+public class InterfaceUtil {
+    
+    private static final String TAG = "NetLib";
+    
+    private InterfaceUtil() {
+    }
+    
+    public static Set<InetAddress> getLocalAddresses() {
+        Set<InetAddress> addresses = new HashSet<InetAddress>();
+        
+        Enumeration<NetworkInterface> networkInterfaces;
+        try {
+            networkInterfaces = NetworkInterface.getNetworkInterfaces();
+        } catch (SocketException e) {
+            Log.v(TAG, "getNetworkInterfaces(): "+e.getMessage(), e);
+            return null;
+        }
+        
+        while (networkInterfaces.hasMoreElements()) {
+            NetworkInterface networkInterface = networkInterfaces.nextElement();
+            Enumeration<InetAddress> addressEnum = networkInterface.getInetAddresses();
+            while (addressEnum.hasMoreElements()) {
+                addresses.add(addressEnum.nextElement());
+            }
+        }
+
+        return addresses;
+    }
+    
+    /**
+     * Find all interfaces which are up, support multicast and
+     * carry an address, excluding the loopback interface.
+     */
+    public static List<NetworkInterface> getMulticastInterfaces() {
+        List<NetworkInterface> interfaces = new ArrayList<NetworkInterface>();
+        Enumeration<NetworkInterface> networkInterfaces;
+        try {
+            networkInterfaces = NetworkInterface.getNetworkInterfaces();
+        } catch (SocketException e) {
+            Log.w(TAG, "cannot find multicast interfaces", e);
+            return interfaces;
+        }
+        if (networkInterfaces == null) {
+            return interfaces;
+        }
+        while (networkInterfaces.hasMoreElements()) {
+            NetworkInterface networkInterface = networkInterfaces.nextElement();
+            try {
+                if (!networkInterface.isUp() || networkInterface.isLoopback() || !networkInterface.supportsMulticast()) {
+                    continue;
+                }
+            } catch (SocketException e) {
+                continue;
+            }
+            if (networkInterface.getInetAddresses().hasMoreElements()) {
+                interfaces.add(networkInterface);
+            }
+        }
+        return interfaces;
+    }
+
+    /**
+     * Find the interface whose subnet contains the given address.
+     * @return the matching interface, the only candidate if there is
+     *     just one, or null if the interface cannot be determined
+     */
+    public static NetworkInterface findInterface(InetAddress address, List<NetworkInterface> interfaces) {
+        if (interfaces.size() == 1) {
+            return interfaces.get(0);
+        }
+        // link-local IPv6 senders carry the scope of the receiving interface
+        int scopeId = 0;
+        if (address instanceof Inet6Address) {
+            Inet6Address address6 = (Inet6Address) address;
+            if (address6.getScopedInterface() != null && interfaces.contains(address6.getScopedInterface())) {
+                return address6.getScopedInterface();
+            }
+            scopeId = address6.getScopeId();
+        }
+        byte[] bytes = address.getAddress();
+        for (NetworkInterface networkInterface : interfaces) {
+            for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses()) {
+                InetAddress local = interfaceAddress.getAddress();
+                byte[] prefix = local.getAddress();
+                if (prefix.length != bytes.length) {
+                    continue;
+                }
+                if (scopeId != 0 && ((Inet6Address) local).getScopeId() != scopeId) {
+                    continue;
+                }
+                if (matchesPrefix(bytes, prefix, interfaceAddress.getNetworkPrefixLength())) {
+                    return networkInterface;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return whether the interface has an address of the same family as the given address
+     */
+    public static boolean hasAddressOfFamily(NetworkInterface networkInterface, InetAddress address) {
+        Enumeration<InetAddress> addressEnum = networkInterface.getInetAddresses();
+        while (addressEnum.hasMoreElements()) {
+            if (addressEnum.nextElement().getClass() == address.getClass()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesPrefix(byte[] address, byte[] prefix, int prefixLength) {
+        int bits = Math.min(prefixLength, address.length * 8);
+        int i = 0;
+        for (; bits >= 8; i++, bits -= 8) {
+            if (address[i] != prefix[i]) {
+                return false;
+            }
+        }
+        if (bits == 0) {
+            return true;
+        }
+        int mask = (0xFF << (8 - bits)) & 0xFF;
+        return (address[i] & mask) == (prefix[i] & mask);
+    }
+
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2011 David Simmons
+ * http://cafbit.com/entry/testing_multicast_support_on_android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cafbit.netlib.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * This class represents a DNS "answer" component.
+ * @author simmons
+ */
+public class DNSAnswer extends DNSComponent {
+    
+    public String name;
+    public Type type;
+    public int ttl;
+    public byte[] rdata;
+    public String rdataString;
+    public boolean cacheFlush;
+    private String srvTarget;
+
+    public DNSAnswer(DNSBuffer buffer) {
+        parse(buffer);
+    }
+
+    /**
+     * Materialize the record at the given index of a message view.
+     */
+    public DNSAnswer(DNSMessageView view, int index) {
+        parse(view, index);
+    }
+
+    /**
+     * Construct a record to be sent, e.g. a known answer of a query.
+     *
+     * @param rdata     the rdata, for PTR and SRV records only the part before the target
+     * @param rdataName the PTR or SRV target, null for other types
+     */
+    public DNSAnswer(String name, Type type, int ttl, byte[] rdata, String rdataName) {
+        this.name = name;
+        this.type = type;
+        this.ttl = ttl;
+        this.rdata = rdata;
+        if (type.equals(Type.PTR)) {
+            rdataString = rdataName;
+        } else if (type.equals(Type.SRV)) {
+            srvTarget = rdataName;
+            parseRdataString();
+        } else {
+            parseRdataString();
+        }
+    }
+
+    /**
+     * Return the byte length of this record without name compression.
+     */
+    @Override
+    public int length() {
+        int length = DNSBuffer.nameByteLength(name);
+        length += 11; // zero-terminating length byte, type, class, ttl, rdlength
+        return length + rdataLength();
+    }
+
+    /**
+     * Render this record into a byte buffer.
+     * The names in PTR and SRV rdata are written from their decoded form,
+     * as received rdata may contain compression pointers into another message.
+     */
+    @Override
+    public void serialize(DNSBuffer buffer) {
+        buffer.checkRemaining(length());
+        buffer.writeName(name);
+        buffer.writeShort(type.qtype);
+        buffer.writeShort(cacheFlush ? 0x8001 : 1); // class IN
+        buffer.writeInteger(ttl);
+        if (type.equals(Type.PTR) || type.equals(Type.SRV)) {
+            // the name may be compressed, so fill in the rdlength afterwards
+            int rdlengthOffset = buffer.offset;
+            buffer.writeShort(0);
+            if (type.equals(Type.PTR)) {
+                buffer.writeName(rdataString);
+            } else {
+                System.arraycopy(rdata, 0, buffer.bytes, buffer.offset, 6); // priority, weight, port
+                buffer.offset += 6;
+                buffer.writeName(srvTarget);
+            }
+            int end = buffer.offset;
+            buffer.offset = rdlengthOffset;
+            buffer.writeShort(end - rdlengthOffset - 2);
+            buffer.offset = end;
+        } else {
+            buffer.writeRdata(rdata);
+        }
+    }
+
+    private int rdataLength() {
+        if (type.equals(Type.PTR)) {
+            return DNSBuffer.nameByteLength(rdataString) + 1;
+        } else if (type.equals(Type.SRV)) {
+            return 6 + DNSBuffer.nameByteLength(srvTarget) + 1;
+        }
+        return rdata.length;
+    }
+
+    private void parse(DNSBuffer buffer) {
+        name = buffer.readName();
+        type = Type.getType(buffer.readShort());
+        
+        // the most significant bit of the rrclass is special
+        // in Multicast DNS -- it is used as a "cache flush" bit,
+        // and only the least significant 15 bits should be used
+        // as the class.
+        // see:
+        //   http://tools.ietf.org/html/draft-cheshire-dnsext-multicastdns-05
+        //   section 11.3
+        int aclass = buffer.readShortAsInt();
+        cacheFlush = ((aclass & 0x8000) != 0);
+        aclass = aclass & 0x7FFF;
+        if (aclass != 1) {
+            throw new DNSException("only class IN supported.  (got "+aclass+")");
+        }
+        
+        ttl = buffer.readInteger();
+        rdata = buffer.readRdata();
+        
+        if (type.equals(Type.PTR)) {
+            // rewind the buffer to the beginning of the
+            // name (just after the 16-bit name-length field)
+            // and reparse the name to allow for compression
+            // offsets.
+            int oldoffset = buffer.offset;
+            buffer.offset -= rdata.length;
+            rdataString = buffer.readName();
+            if (oldoffset != buffer.offset) {
+                throw new DNSException("bad PTR rdata");
+            }
+        } else if (type.equals(Type.SRV)) {
+            // same as above, the target name starts after
+            // the priority, weight and port fields.
+            if (rdata.length < 7) {
+                throw new DNSException("bad SRV rdata");
+            }
+            int oldoffset = buffer.offset;
+            buffer.offset -= rdata.length - 6;
+            srvTarget = buffer.readName();
+            if (oldoffset != buffer.offset) {
+                throw new DNSException("bad SRV rdata");
+            }
+            parseRdataString();
+        } else {
+            parseRdataString();
+        }
+    }
+
+    private void parse(DNSMessageView view, int index) {
+        name = view.getRecordName(index);
+        type = Type.getType(view.getRecordType(index));
+        if (view.getRecordClass(index) != 1) {
+            throw new DNSException("only class IN supported.  (got "+view.getRecordClass(index)+")");
+        }
+        cacheFlush = view.isCacheFlush(index);
+        ttl = view.getRecordTtl(index);
+        rdata = view.copyRdata(index);
+        if (type.equals(Type.PTR)) {
+            rdataString = view.getRdataName(index);
+        } else if (type.equals(Type.SRV)) {
+            srvTarget = view.getSRVTarget(index);
+            parseRdataString();
+        } else {
+            parseRdataString();
+        }
+    }
+
+    private void parseRdataString() {
+        if (type.equals(Type.A) || type.equals(Type.AAAA)) {
+            try {
+                rdataString = InetAddress.getByAddress(rdata).toString();
+            } catch (UnknownHostException e) {
+                throw new DNSException("problem parsing rdata");
+            }
+        } else if (type.equals(Type.TXT)) {
+            // only needed for toString(), see getRdataString()
+            rdataString = null;
+        } else if (type.equals(Type.SRV)) {
+            rdataString = getSRVPriority()+" "+getSRVWeight()+" "+getSRVPort()+" "+srvTarget;
+        } else {
+            rdataString = "data["+rdata.length+"]";
+        }
+
+    }
+    
+    /**
+     * @return the attributes of a TXT record, an empty map for other types
+     */
+    public DNSTextRecord getAttributes() {
+        if (!type.equals(Type.TXT)) return DNSTextRecord.EMPTY;
+        return new DNSTextRecord(rdata, 0, rdata.length);
+    }
+    
+    public String getPTR() {
+        if (!type.equals(Type.PTR)) return null;
+        return rdataString;
+    }
+
+    public int getSRVPriority() {
+        if (!type.equals(Type.SRV)) return 0;
+        return (rdata[0]&0xFF)<<8 | (rdata[1]&0xFF);
+    }
+
+    public int getSRVWeight() {
+        if (!type.equals(Type.SRV)) return 0;
+        return (rdata[2]&0xFF)<<8 | (rdata[3]&0xFF);
+    }
+
+    public int getSRVPort() {
+        if (!type.equals(Type.SRV)) return 0;
+        return (rdata[4]&0xFF)<<8 | (rdata[5]&0xFF);
+    }
+
+    public String getSRVTarget() {
+        return srvTarget;
+    }
+
+    public InetAddress getAddress() {
+        if (!type.equals(Type.A) && !type.equals(Type.AAAA)) return null;
+        try {
+            return InetAddress.getByAddress(rdata);
+        } catch (UnknownHostException e) {
+            throw new DNSException("problem parsing rdata");
+        }
+    }
+    
+    public String toString() {
+        return name+" "+type.toString()+" "+getRdataString();
+    }
+
+    public String getRdataString() {
+        if (rdataString == null && type.equals(Type.TXT)) {
+            StringBuilder sb = new StringBuilder();
+            for (int i=0; i<rdata.length; ) {
+                int length = rdata[i++] & 0xFF;
+                if (i + length > rdata.length) {
+                    throw new DNSException("bad TXT rdata");
+                }
+                sb.append(DNSBuffer.bytesToString(rdata, i, length));
+                i += length;
+                if (i != rdata.length) {
+                    sb.append(" // ");
+                }
+            }
+            rdataString = sb.toString();
+        }
+        return rdataString;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,440 @@
+/*
+ * Copyright 2011 David Simmons
+ * http://cafbit.com/entry/testing_multicast_support_on_android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cafbit.netlib.dns;
+
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Encapsulate a byte buffer which maintains its own
+ * traversal state and provides several utility methods
+ * useful for consuming or producing the binary fields.
+ * @author simmons
+ */
+public class DNSBuffer {
+    
+    public byte[] bytes;
+    public int start;
+    public int length;
+    public int offset;
+
+    public DNSBuffer(int length) {
+        bytes = new byte[length];
+        start = 0;
+        this.length = length;
+        offset = 0;
+    }
+    
+    public DNSBuffer(byte[] bytes) {
+        this.bytes = bytes;
+        this.start = 0;
+        this.length = bytes.length;
+        this.offset = 0;
+    }
+    
+    public DNSBuffer(byte[] bytes, int start, int length) {
+        this.bytes = bytes;
+        this.start = start;
+        this.length = length;
+        this.offset = start;
+    }
+    
+    //
+
+    /**
+     * Re-point this buffer at another byte array, so that
+     * one instance can be reused for consecutive messages.
+     */
+    public void wrap(byte[] bytes, int start, int length) {
+        this.bytes = bytes;
+        this.start = start;
+        this.length = length;
+        this.offset = start;
+        labelBudget = maxLabels;
+        if (nameOffsets != null) nameOffsets.clear();
+    }
+
+    public void reset() {
+        offset = start;
+        labelBudget = maxLabels;
+        if (nameOffsets != null) nameOffsets.clear();
+    }
+
+    /**
+     * Limit the number of labels, including compression pointers, which may be
+     * decoded from the message in this buffer until it is wrapped or reset again.
+     * This bounds the time a single hostile message can take to decode.
+     */
+    public void setLabelBudget(int maxLabels) {
+        this.maxLabels = maxLabels;
+        this.labelBudget = maxLabels;
+    }
+    
+    public int remaining() {
+        return length - (offset - start);
+    }
+    
+    public void checkRemaining(int needsBytes) {
+        if (remaining() < needsBytes) {
+            throw new DNSException("insufficient buffer: "+remaining()+" < "+needsBytes);
+        }
+    }
+    
+    // read methods
+    
+    public byte readByte() {
+        return bytes[offset++];
+    }
+    
+    public byte[] readBytes(int numBytes) {
+        byte[] ba = new byte[numBytes];
+        System.arraycopy(bytes, offset, ba, 0, numBytes);
+        offset += numBytes;
+        return ba;
+    }
+
+    public short readShort() {
+        byte hi = bytes[offset++];
+        byte lo = bytes[offset++];
+        return (short)((hi&0xFF)<<8 | (lo&0xFF));
+    }
+
+    public int readShortAsInt() {
+        byte hi = bytes[offset++];
+        byte lo = bytes[offset++];
+        return (int)((hi&0xFF)<<8 | (lo&0xFF));
+    }
+    
+    public int readInteger() {
+        byte b1 = bytes[offset++];
+        byte b2 = bytes[offset++];
+        byte b3 = bytes[offset++];
+        byte b4 = bytes[offset++];
+        return ((b1&0xFF)<<24 | (b2&0xFF)<<16 | (b3&0xFF)<<8 | (b4&0xFF));
+    }
+
+    public String readString(int numBytes) {
+        String string = bytesToString(bytes, offset, numBytes);
+        offset += numBytes;
+        return string;
+    }
+    
+    /**
+     * Read the next label of a name, following compression pointers.
+     *
+     * @return the label, or null at the end of the name, the offset
+     *         is then behind the name where it has been started
+     */
+    public String readLabel() {
+        int length = nextLabel();
+        if (length == 0) return null;
+        return readString(length);
+    }
+
+    /**
+     * Read a (possibly compressed) name.
+     * Names are walked iteratively and every compression pointer has to point
+     * before the previous one, so a malformed or hostile message can neither
+     * loop nor take more than the label budget to decode.
+     */
+    public String readName() {
+        beginName();
+        StringBuilder sb = nameBuilder;
+        sb.setLength(0);
+        int length;
+        while ((length = nextLabel()) != 0) {
+            if (sb.length() > 0) sb.append('.');
+            appendString(sb, length);
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Read a (possibly compressed) name as an interned DNSName.
+     * Names which have been read before are looked up without allocating.
+     */
+    public DNSName readDNSName() {
+        if (nameScratch == null) nameScratch = new byte[MAX_NAME_LENGTH];
+        beginName();
+        int nameOffset = 0;
+        int length;
+        while ((length = nextLabel()) != 0) {
+            nameScratch[nameOffset++] = (byte) length;
+            System.arraycopy(bytes, offset, nameScratch, nameOffset, length);
+            nameOffset += length;
+            offset += length;
+        }
+        nameScratch[nameOffset++] = 0;
+        return DNSName.intern(nameScratch, 0, nameOffset);
+    }
+    
+    public byte[] readRdata() {
+        int length = (int) readShort();
+        byte[] rdata = readBytes(length);
+        return rdata;
+    }
+    
+    public void rewind(int amount) {
+        offset = offset - amount;
+    }
+    
+    // write methods
+    
+    public void writeByte(byte b) {
+        bytes[offset++] = b;
+    }
+    
+    public void writeBytes(byte[] ba) {
+        System.arraycopy(ba, 0, bytes, offset, ba.length);
+        offset += ba.length;
+    }
+    
+    public void writeShort(short s) {
+        bytes[offset++] = (byte)((s>>>8) & 0xFF);
+        bytes[offset++] = (byte)(s & 0xFF);
+    }
+
+    public void writeInteger(int i) {
+        bytes[offset++] = (byte)((i>>>24) & 0xFF);
+        bytes[offset++] = (byte)((i>>>16) & 0xFF);
+        bytes[offset++] = (byte)((i>>>8) & 0xFF);
+        bytes[offset++] = (byte)(i & 0xFF);
+    }
+    
+    public void writeShort(int i) {
+        writeShort((short) i);
+    }
+    
+    public void writeString(String string) {
+        byte[] stringBytes = stringToBytes(string);
+        System.arraycopy(stringBytes, 0, bytes, offset, stringBytes.length);
+        offset += stringBytes.length;
+    }
+    
+    public void writeLabel(String label) {
+        if (label.length() > 63) {
+            throw new DNSException("label length > 63");
+        }
+        writeByte((byte) lengthInBytes(label));
+        writeString(label);
+    }
+    
+    /**
+     * Write a name, compressing it against the names written before
+     * if name compression is enabled.
+     */
+    public void writeName(String name) {
+        String[] labels = nameToLabels(name);
+        for (int i=0; i<labels.length; i++) {
+            if (nameOffsets != null) {
+                String suffix = suffix(labels, i);
+                Integer pointer = nameOffsets.get(suffix);
+                if (pointer != null) {
+                    writeShort(0xC000 | pointer);
+                    return;
+                }
+                int position = offset - start;
+                if (position <= MAX_POINTER) nameOffsets.put(suffix, position);
+            }
+            writeLabel(labels[i]);
+        }
+        writeByte((byte) 0); // terminating zero length
+    }
+    
+    /**
+     * Write every repeated name suffix as a pointer to its first occurrence
+     * from now on. The buffer has to start at the beginning of the message,
+     * as pointers are offsets from there.
+     * see: http://www.ietf.org/rfc/rfc1035.txt section 4.1.4
+     */
+    public void enableNameCompression() {
+        if (nameOffsets == null) nameOffsets = new HashMap<String, Integer>();
+    }
+    
+    private static String suffix(String[] labels, int from) {
+        StringBuilder sb = new StringBuilder();
+        for (int i=from; i<labels.length; i++) {
+            if (i > from) sb.append('.');
+            sb.append(labels[i]);
+        }
+        return sb.toString().toLowerCase(Locale.US);
+    }
+    
+    public void writeRdata(byte[] rdata) {
+        writeShort((short) rdata.length);
+        writeBytes(rdata);
+    }
+    
+    // public utility methods
+    
+    public static int nameByteLength(String name) {
+        int length = 0;
+        for (String label : nameToLabels(name)) {
+            length++; // label-length octet
+            length += stringToBytes(label).length; // string length in bytes
+        }
+        return length;
+    }
+
+    public static byte[] stringToBytes(String string) {
+        byte[] bytes;
+        try {
+            bytes = string.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new DNSException(e);
+        }
+        return bytes;
+    }
+    
+    public static String bytesToString(byte[] bytes, int offset, int length) {
+        String string;
+        try {
+            string = new String(bytes, offset, length, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new DNSException(e);
+        }
+        return string;
+    }
+    
+    // name compression dictionary of the write methods, null if disabled.
+    // maps lower case name suffixes to their offset from the start of the message.
+    
+    private static final int MAX_POINTER = 0x3FFF;
+    private Map<String, Integer> nameOffsets = null;
+    
+    // decompression state of the name being read.
+    // see: http://www.ietf.org/rfc/rfc1035.txt sections 2.3.4 and 4.1.4
+    
+    public static final int DEFAULT_LABEL_BUDGET = 16384;
+    private static final int MAX_POINTER_HOPS = 16;
+    private static final int MAX_NAME_LENGTH = 255;
+    
+    private int maxLabels = DEFAULT_LABEL_BUDGET;
+    private int labelBudget = DEFAULT_LABEL_BUDGET;
+    // the offset behind the first compression pointer of the name, -1 if none has been followed
+    private int nameEnd = -1;
+    // every pointer has to point before this offset
+    private int pointerLimit = -1;
+    private int hops = 0;
+    private int nameLength = 0;
+    private final StringBuilder nameBuilder = new StringBuilder();
+    // the uncompressed name read by readDNSName
+    private byte[] nameScratch = null;
+    
+    private void beginName() {
+        nameEnd = -1;
+        pointerLimit = -1;
+        hops = 0;
+        nameLength = 0;
+    }
+    
+    /**
+     * Advance to the next label of the current name, following compression pointers.
+     *
+     * @return the length of the label, the offset is then at its first byte,
+     *         or 0 at the end of the name, the offset is then behind the name
+     */
+    private int nextLabel() {
+        int end = start + length;
+        while (true) {
+            if (--labelBudget < 0) {
+                throw new DNSException("label budget of "+maxLabels+" exhausted");
+            }
+            if (offset >= end) {
+                throw new DNSException("name exceeds message");
+            }
+            int lengthByte = bytes[offset] & 0xFF;
+            int hiBits = lengthByte >>> 6;
+            if (hiBits == 3) {
+                if (offset + 2 > end) {
+                    throw new DNSException("name exceeds message");
+                }
+                int pointer = start + ((lengthByte & 0x3F) << 8 | (bytes[offset+1] & 0xFF));
+                // pointing before the previous pointer target rules out loops
+                int limit = pointerLimit == -1 ? offset : pointerLimit;
+                if (pointer >= limit) {
+                    throw new DNSException("compression pointer does not point backwards");
+                }
+                if (++hops > MAX_POINTER_HOPS) {
+                    throw new DNSException("more than "+MAX_POINTER_HOPS+" compression pointers");
+                }
+                if (nameEnd == -1) nameEnd = offset + 2;
+                pointerLimit = pointer;
+                offset = pointer;
+                continue;
+            } else if (hiBits > 0) {
+                throw new DNSException("unknown label compression format");
+            }
+            offset++;
+            if (lengthByte == 0) {
+                if (nameEnd != -1) offset = nameEnd;
+                beginName();
+                return 0;
+            }
+            nameLength += lengthByte + 1;
+            if (nameLength + 1 > MAX_NAME_LENGTH) {
+                throw new DNSException("name longer than "+MAX_NAME_LENGTH+" bytes");
+            }
+            if (offset + lengthByte > end) {
+                throw new DNSException("label exceeds message");
+            }
+            return lengthByte;
+        }
+    }
+    
+    /**
+     * Append a string from the current offset, decoding ASCII without allocating.
+     */
+    private void appendString(StringBuilder sb, int numBytes) {
+        for (int i=0; i<numBytes; i++) {
+            if (bytes[offset+i] < 0) {
+                sb.append(readString(numBytes));
+                return;
+            }
+        }
+        for (int i=0; i<numBytes; i++) {
+            sb.append((char) bytes[offset++]);
+        }
+    }
+    
+    // private static utility methods
+    
+    private static String[] nameToLabels(String name) {
+        return name.split("\\.");
+    }
+    
+    // uncomment if needed
+    /*
+    private static String labelsToName(String[] labels) {
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i<labels.length; i++) {
+            sb.append(labels[i]);
+            if (i != (labels.length-1)) {
+                sb.append('.');
+            }
+        }
+        return sb.toString();
+    }
+    */
+    
+    private static int lengthInBytes(String string) {
+        return stringToBytes(string).length;
+    }
+    
+}
@@ -26,6 +26,9 @@ public abstract class DNSComponent {
         MX(15),
         TXT(16),
         AAAA(28),
+        SRV(33),
+        OPT(41),
+        NSEC(47),
         ANY(255),
         OTHER(0);
         public int qtype;
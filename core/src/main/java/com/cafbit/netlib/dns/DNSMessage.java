@@ -0,0 +1,366 @@
+/*
+ * Copyright 2011 David Simmons
+ * http://cafbit.com/entry/testing_multicast_support_on_android
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cafbit.netlib.dns;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * This class represents a single DNS message, and is capable
+ * of parsing or constructing such a message.
+ * <p>
+ * see: http://www.ietf.org/rfc/rfc1035.txt
+ *
+ * @author simmons
+ */
+public class DNSMessage {
+	
+	/**
+	 * The TC bit, set in queries whose known answers continue in the next packet.
+	 * see: https://tools.ietf.org/html/rfc6762 section 7.2
+	 */
+	public static final int FLAG_TC = 0x0200;
+	
+	private short messageId;
+	private int flags;
+	private LinkedList<DNSQuestion> questions = new LinkedList<DNSQuestion>();
+	private LinkedList<DNSAnswer> answers = new LinkedList<DNSAnswer>();
+	private LinkedList<DNSAnswer> authorities = new LinkedList<DNSAnswer>();
+	private LinkedList<DNSAnswer> additionals = new LinkedList<DNSAnswer>();
+	private DNSMessageView view;
+	private boolean materialized = true;
+	
+	/**
+	 * Construct a DNS host query
+	 */
+	public DNSMessage(String hostname) {
+		this(hostname, DNSQuestion.Type.ANY);
+	}
+	
+	/**
+	 * Construct a DNS query for records of the given type.
+	 * Multicast queries use message ID 0, see: https://tools.ietf.org/html/rfc6762 section 18.1
+	 */
+	public DNSMessage(String name, DNSComponent.Type type) {
+		messageId = 0;
+		questions.add(new DNSQuestion(type, name));
+	}
+	
+	/**
+	 * Construct a DNS query carrying several questions, with message ID 0
+	 */
+	public DNSMessage(List<DNSQuestion> questions) {
+		messageId = 0;
+		this.questions.addAll(questions);
+	}
+	
+	/**
+	 * Construct a DNS query carrying the records the querier already knows,
+	 * so that responders holding nothing new stay silent.
+	 * see: https://tools.ietf.org/html/rfc6762 section 7.1
+	 */
+	public DNSMessage(List<DNSQuestion> questions, List<DNSAnswer> knownAnswers) {
+		this(questions);
+		this.answers.addAll(knownAnswers);
+	}
+	
+	/**
+	 * Parse the supplied packet as a DNS message.
+	 */
+	public DNSMessage(byte[] packet) {
+		this(packet, 0, packet.length);
+	}
+	
+	/**
+	 * Parse the supplied packet as a DNS message.
+	 */
+	public DNSMessage(byte[] packet, int offset, int length) {
+		this(new DNSMessageView(packet, offset, length));
+		materialize();
+	}
+	
+	/**
+	 * Wrap an already indexed message view.
+	 * Questions and answers are only materialized when they are requested,
+	 * so this message is only valid as long as the view and its buffer are.
+	 */
+	public DNSMessage(DNSMessageView view) {
+		this.view = view;
+		this.messageId = (short) view.getMessageId();
+		this.flags = view.getFlags();
+		this.materialized = false;
+	}
+	
+	/**
+	 * @return the exact length of the serialized message
+	 */
+	public int length() {
+		// names are compressed against each other, so only writing the message tells
+		return serialize().length;
+	}
+	
+	/**
+	 * @return the length of the message without name compression
+	 */
+	private int uncompressedLength() {
+		materialize();
+		int length = 12; // header length
+		for (DNSQuestion q : questions) {
+			length += q.length();
+		}
+		for (DNSAnswer a : answers) {
+			length += a.length();
+		}
+		for (DNSAnswer a : authorities) {
+			length += a.length();
+		}
+		for (DNSAnswer a : additionals) {
+			length += a.length();
+		}
+		return length;
+	}
+	
+	public byte[] serialize() {
+		materialize();
+		DNSBuffer buffer = new DNSBuffer(uncompressedLength());
+		buffer.enableNameCompression();
+		
+		// header
+		buffer.writeShort(messageId);
+		buffer.writeShort(flags);
+		buffer.writeShort(questions.size()); // qdcount
+		buffer.writeShort(answers.size()); // ancount
+		buffer.writeShort(authorities.size()); // nscount
+		buffer.writeShort(additionals.size()); // arcount
+		
+		// questions
+		for (DNSQuestion question : questions) {
+			question.serialize(buffer);
+		}
+		
+		// answers
+		for (DNSAnswer answer : answers) {
+			answer.serialize(buffer);
+		}
+		
+		// authority and additional records
+		for (DNSAnswer answer : authorities) {
+			answer.serialize(buffer);
+		}
+		for (DNSAnswer answer : additionals) {
+			answer.serialize(buffer);
+		}
+		
+		if (buffer.offset == buffer.bytes.length) return buffer.bytes;
+		return Arrays.copyOf(buffer.bytes, buffer.offset);
+	}
+	
+	public boolean isTruncated() {
+		return (flags & FLAG_TC) != 0;
+	}
+	
+	public void setTruncated(boolean truncated) {
+		flags = truncated ? flags | FLAG_TC : flags & ~FLAG_TC;
+	}
+	
+	private void materialize() {
+		if (materialized) return;
+		
+		// questions
+		questions.clear();
+		for (int i = 0; i < view.getQuestionCount(); i++) {
+			questions.add(new DNSQuestion(view, i));
+		}
+		
+		// answers
+		int index = 0;
+		answers.clear();
+		for (int i = 0; i < view.getAnswerCount(); i++) {
+			answers.add(new DNSAnswer(view, index++));
+		}
+		
+		// authority and additional records, skipping pseudo records like OPT
+		authorities.clear();
+		for (int i = 0; i < view.getAuthorityCount(); i++, index++) {
+			if (view.getRecordClass(index) != 1) continue;
+			authorities.add(new DNSAnswer(view, index));
+		}
+		additionals.clear();
+		for (int i = 0; i < view.getAdditionalCount(); i++, index++) {
+			if (view.getRecordClass(index) != 1) continue;
+			additionals.add(new DNSAnswer(view, index));
+		}
+		
+		materialized = true;
+	}
+	
+	public String toString() {
+		materialize();
+		StringBuilder sb = new StringBuilder();
+		
+		// questions
+		for (DNSQuestion q : questions) {
+			sb.append(q.toString() + "\n");
+		}
+		
+		// group answers by name
+		SortedMap<String, List<DNSAnswer>> answersByName = new TreeMap<String, List<DNSAnswer>>();
+		for (DNSAnswer a : getRecords()) {
+			List<DNSAnswer> list;
+			if (answersByName.containsKey(a.name)) {
+				list = answersByName.get(a.name);
+			} else {
+				list = new LinkedList<DNSAnswer>();
+				answersByName.put(a.name, list);
+			}
+			list.add(a);
+		}
+		for (Map.Entry<String, List<DNSAnswer>> entry : answersByName.entrySet()) {
+			sb.append(entry.getKey() + "\n");
+			for (DNSAnswer a : entry.getValue()) {
+				sb.append("  " + a.type.toString() + " " + a.getRdataString() + "\n");
+			}
+		}
+		
+		return sb.toString();
+	}
+	
+	public Map<String, String> getAttributes() {
+		HashMap<String, String> map = new HashMap<>();
+		if (!materialized) {
+			for (int i = 0; i < view.getAnswerCount(); i++) {
+				if (view.getRecordType(i) != DNSComponent.Type.TXT.qtype) continue;
+				view.readAttributes(i, map);
+			}
+			return map;
+		}
+		for (DNSAnswer answer : answers) {
+			map.putAll(answer.getAttributes());
+		}
+		return map;
+	}
+	
+	public String getPTR() {
+		if (!materialized) {
+			for (int i = 0; i < view.getAnswerCount(); i++) {
+				if (view.getRecordType(i) != DNSComponent.Type.PTR.qtype) continue;
+				return view.getRdataName(i);
+			}
+			return null;
+		}
+		for (DNSAnswer answer : answers) {
+			if (answer.getPTR() == null) continue;
+			return answer.getPTR();
+		}
+		return null;
+	}
+	
+	public String getType() {
+		if (!materialized) {
+			DNSName ptr = getPTRName();
+			return ptr == null ? null : ptr.getServiceType();
+		}
+		return getServiceType(getPTR());
+	}
+	
+	public String getHost() {
+		if (!materialized) {
+			DNSName ptr = getPTRName();
+			return ptr == null ? null : ptr.getServiceName();
+		}
+		return getServiceName(getPTR());
+	}
+	
+	/**
+	 * @return the interned target of the first PTR record of a view, whose service type and name are only parsed once
+	 */
+	private DNSName getPTRName() {
+		for (int i = 0; i < view.getAnswerCount(); i++) {
+			if (view.getRecordType(i) != DNSComponent.Type.PTR.qtype) continue;
+			return view.getRdataDNSName(i);
+		}
+		return null;
+	}
+	
+	/**
+	 * Extract the service type from a service instance name,
+	 * e.g. "_ipp._tcp." from "Printer._ipp._tcp.local".
+	 */
+	public static String getServiceType(String instanceName) {
+		if (instanceName == null) return null;
+		String name = instanceName.replace(".local", ".");
+		int l = name.lastIndexOf("._");
+		if (l == -1) return null;
+		l = name.lastIndexOf("._", l - 1);
+		return name.substring(l + 1);
+	}
+	
+	/**
+	 * Extract the service name from a service instance name,
+	 * e.g. "Printer" from "Printer._ipp._tcp.local".
+	 */
+	public static String getServiceName(String instanceName) {
+		if (instanceName == null) return null;
+		String name = instanceName.replace(".local", ".");
+		int l = name.lastIndexOf("._");
+		if (l == -1) return name;
+		int l2 = name.lastIndexOf("._", l - 1);
+		if (l2 == -1) return name.substring(0, l);
+		return name.substring(0, l2);
+	}
+	
+	public LinkedList<DNSAnswer> getAnswers() {
+		materialize();
+		return answers;
+	}
+	
+	public LinkedList<DNSAnswer> getAuthorities() {
+		materialize();
+		return authorities;
+	}
+	
+	public LinkedList<DNSAnswer> getAdditionals() {
+		materialize();
+		return additionals;
+	}
+	
+	/**
+	 * @return the records of all three record sections in wire order
+	 */
+	public List<DNSAnswer> getRecords() {
+		materialize();
+		List<DNSAnswer> records = new ArrayList<DNSAnswer>(answers.size() + authorities.size() + additionals.size());
+		records.addAll(answers);
+		records.addAll(authorities);
+		records.addAll(additionals);
+		return records;
+	}
+	
+	/**
+	 * @return the view this message was parsed from, or null for constructed messages
+	 */
+	public DNSMessageView getView() {
+		return view;
+	}
+	
+}
@@ -0,0 +1,431 @@
+package com.cafbit.netlib.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * A read-only flyweight view over a received DNS message.
+ * <p>
+ * The view indexes the header and the offsets of every question and
+ * resource record directly on the receive buffer without copying it.
+ * Names, rdata and TXT strings are only decoded when a caller asks
+ * for them, so a view can be reset and reused for every received packet.
+ * <p>
+ * The view does not own the underlying bytes: any value obtained from it
+ * is only valid until the buffer is overwritten or the view is reset.
+ */
+public class DNSMessageView {
+	
+	public static final int HEADER_LENGTH = 12;
+	
+	private static final int QUESTION_FIXED_LENGTH = 4; // qtype, qclass
+	private static final int QUESTION_MIN_LENGTH = 1 + QUESTION_FIXED_LENGTH; // root name
+	private static final int RECORD_FIXED_LENGTH = 10; // type, class, ttl, rdlength
+	private static final int RECORD_MIN_LENGTH = 1 + RECORD_FIXED_LENGTH; // root name, no rdata
+	private static final int SRV_TYPE = 33;
+	private static final int SRV_MIN_LENGTH = 7; // priority, weight, port, at least the root name
+	
+	private byte[] bytes;
+	private int start;
+	private int length;
+	
+	private int questionCount;
+	private int answerCount;
+	private int authorityCount;
+	private int additionalCount;
+	
+	// offset of the owner name and of the fixed fields following it
+	private int[] questionNameOffsets = new int[4];
+	private int[] questionFixedOffsets = new int[4];
+	private int[] recordNameOffsets = new int[16];
+	private int[] recordFixedOffsets = new int[16];
+	
+	private final DNSBuffer nameBuffer = new DNSBuffer(0);
+	
+	public DNSMessageView() {
+	}
+	
+	public DNSMessageView(byte[] packet) {
+		reset(packet, 0, packet.length);
+	}
+	
+	public DNSMessageView(byte[] packet, int offset, int length) {
+		reset(packet, offset, length);
+	}
+	
+	public DNSMessageView(ByteBuffer packet) {
+		reset(packet);
+	}
+	
+	/**
+	 * Point this view at a new message and index it.
+	 *
+	 * @throws DNSException if the message is truncated or malformed
+	 */
+	public DNSMessageView reset(byte[] packet, int offset, int length) {
+		this.bytes = packet;
+		this.start = offset;
+		this.length = length;
+		nameBuffer.wrap(packet, offset, length);
+		index();
+		return this;
+	}
+	
+	/**
+	 * Point this view at the remaining bytes of the supplied buffer.
+	 * Heap buffers are viewed in place, direct buffers have to be copied once.
+	 */
+	public DNSMessageView reset(ByteBuffer packet) {
+		if (packet.hasArray()) {
+			return reset(packet.array(), packet.arrayOffset() + packet.position(), packet.remaining());
+		}
+		byte[] copy = new byte[packet.remaining()];
+		packet.duplicate().get(copy);
+		return reset(copy, 0, copy.length);
+	}
+	
+	private void index() {
+		if (length < HEADER_LENGTH) {
+			throw new DNSException("insufficient buffer: " + length + " < " + HEADER_LENGTH);
+		}
+		questionCount = readShort(start + 4);
+		answerCount = readShort(start + 6);
+		authorityCount = readShort(start + 8);
+		additionalCount = readShort(start + 10);
+		
+		int offset = start + HEADER_LENGTH;
+		int end = start + length;
+		
+		// reject impossible counts before growing the reused offset arrays for them
+		int recordCount = getRecordCount();
+		if (questionCount * QUESTION_MIN_LENGTH + recordCount * RECORD_MIN_LENGTH > length - HEADER_LENGTH) {
+			String message = "section counts exceed message: " + questionCount + " questions, " + recordCount + " records";
+			questionCount = answerCount = authorityCount = additionalCount = 0;
+			throw new DNSException(message);
+		}
+		
+		if (questionNameOffsets.length < questionCount) {
+			questionNameOffsets = new int[questionCount];
+			questionFixedOffsets = new int[questionCount];
+		}
+		for (int i = 0; i < questionCount; i++) {
+			questionNameOffsets[i] = offset;
+			offset = skipName(offset, end);
+			questionFixedOffsets[i] = offset;
+			offset += QUESTION_FIXED_LENGTH;
+			if (offset > end) {
+				throw new DNSException("question " + i + " exceeds message");
+			}
+		}
+		
+		if (recordNameOffsets.length < recordCount) {
+			recordNameOffsets = new int[recordCount];
+			recordFixedOffsets = new int[recordCount];
+		}
+		for (int i = 0; i < recordCount; i++) {
+			recordNameOffsets[i] = offset;
+			offset = skipName(offset, end);
+			recordFixedOffsets[i] = offset;
+			if (offset + RECORD_FIXED_LENGTH > end) {
+				throw new DNSException("record " + i + " exceeds message");
+			}
+			int rdataLength = readShort(offset + 8);
+			if (readShort(offset) == SRV_TYPE && rdataLength < SRV_MIN_LENGTH) {
+				throw new DNSException("bad SRV rdata");
+			}
+			offset += RECORD_FIXED_LENGTH + rdataLength;
+			if (offset > end) {
+				throw new DNSException("rdata of record " + i + " exceeds message");
+			}
+		}
+	}
+	
+	private int skipName(int offset, int end) {
+		while (offset < end) {
+			int lengthByte = bytes[offset] & 0xFF;
+			if (lengthByte == 0) {
+				return offset + 1;
+			}
+			if ((lengthByte & 0xC0) == 0xC0) {
+				// a compression pointer always terminates the name
+				if (offset + 2 > end) break;
+				return offset + 2;
+			} else if ((lengthByte & 0xC0) != 0) {
+				throw new DNSException("unknown label compression format");
+			}
+			offset += 1 + lengthByte;
+		}
+		throw new DNSException("name exceeds message");
+	}
+	
+	private int readShort(int offset) {
+		return (bytes[offset] & 0xFF) << 8 | (bytes[offset + 1] & 0xFF);
+	}
+	
+	private int readInteger(int offset) {
+		return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+				| (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+	}
+	
+	/**
+	 * Decode the (possibly compressed) name starting at the absolute offset.
+	 */
+	public String readName(int offset) {
+		nameBuffer.offset = offset;
+		return nameBuffer.readName();
+	}
+	
+	/**
+	 * Look up the interned form of the (possibly compressed) name starting at the absolute offset.
+	 * Unlike the string getters this does not allocate for names seen before.
+	 */
+	public DNSName readDNSName(int offset) {
+		nameBuffer.offset = offset;
+		return nameBuffer.readDNSName();
+	}
+	
+	// header
+	
+	public byte[] getBytes() {
+		return bytes;
+	}
+	
+	public int getStart() {
+		return start;
+	}
+	
+	public int getLength() {
+		return length;
+	}
+	
+	public int getMessageId() {
+		return readShort(start);
+	}
+	
+	public int getFlags() {
+		return readShort(start + 2);
+	}
+	
+	/**
+	 * @return true if the QR bit is set, i.e. this message is a response
+	 */
+	public boolean isResponse() {
+		return (bytes[start + 2] & 0x80) != 0;
+	}
+	
+	public int getQuestionCount() {
+		return questionCount;
+	}
+	
+	public int getAnswerCount() {
+		return answerCount;
+	}
+	
+	public int getAuthorityCount() {
+		return authorityCount;
+	}
+	
+	public int getAdditionalCount() {
+		return additionalCount;
+	}
+	
+	/**
+	 * Records are indexed in wire order: answers first,
+	 * followed by the authority and additional sections.
+	 */
+	public int getRecordCount() {
+		return answerCount + authorityCount + additionalCount;
+	}
+	
+	// questions
+	
+	public int getQuestionOffset(int index) {
+		checkQuestion(index);
+		return questionNameOffsets[index];
+	}
+	
+	public int getQuestionType(int index) {
+		checkQuestion(index);
+		return readShort(questionFixedOffsets[index]);
+	}
+	
+	/**
+	 * @return the question class without the unicast-response bit
+	 */
+	public int getQuestionClass(int index) {
+		checkQuestion(index);
+		return readShort(questionFixedOffsets[index] + 2) & 0x7FFF;
+	}
+	
+	public boolean isUnicastResponse(int index) {
+		checkQuestion(index);
+		return (bytes[questionFixedOffsets[index] + 2] & 0x80) != 0;
+	}
+	
+	public String getQuestionName(int index) {
+		return readName(getQuestionOffset(index));
+	}
+	
+	public DNSName getQuestionDNSName(int index) {
+		return readDNSName(getQuestionOffset(index));
+	}
+	
+	// resource records
+	
+	public int getRecordOffset(int index) {
+		checkRecord(index);
+		return recordNameOffsets[index];
+	}
+	
+	public int getRecordType(int index) {
+		checkRecord(index);
+		return readShort(recordFixedOffsets[index]);
+	}
+	
+	/**
+	 * @return the record class without the cache-flush bit
+	 */
+	public int getRecordClass(int index) {
+		checkRecord(index);
+		return readShort(recordFixedOffsets[index] + 2) & 0x7FFF;
+	}
+	
+	public boolean isCacheFlush(int index) {
+		checkRecord(index);
+		return (bytes[recordFixedOffsets[index] + 2] & 0x80) != 0;
+	}
+	
+	public int getRecordTtl(int index) {
+		checkRecord(index);
+		return readInteger(recordFixedOffsets[index] + 4);
+	}
+	
+	public int getRdataOffset(int index) {
+		checkRecord(index);
+		return recordFixedOffsets[index] + RECORD_FIXED_LENGTH;
+	}
+	
+	public int getRdataLength(int index) {
+		checkRecord(index);
+		return readShort(recordFixedOffsets[index] + 8);
+	}
+	
+	/**
+	 * @return a read-only slice of the rdata sharing the receive buffer
+	 */
+	public ByteBuffer getRdata(int index) {
+		return ByteBuffer.wrap(bytes, getRdataOffset(index), getRdataLength(index)).slice().asReadOnlyBuffer();
+	}
+	
+	public byte[] copyRdata(int index) {
+		int length = getRdataLength(index);
+		byte[] rdata = new byte[length];
+		System.arraycopy(bytes, getRdataOffset(index), rdata, 0, length);
+		return rdata;
+	}
+	
+	public String getRecordName(int index) {
+		return readName(getRecordOffset(index));
+	}
+	
+	public DNSName getRecordDNSName(int index) {
+		return readDNSName(getRecordOffset(index));
+	}
+	
+	/**
+	 * Decode a name stored in the rdata, as used by PTR and CNAME records.
+	 */
+	public String getRdataName(int index) {
+		return readName(getRdataOffset(index));
+	}
+	
+	public DNSName getRdataDNSName(int index) {
+		return readDNSName(getRdataOffset(index));
+	}
+	
+	/**
+	 * @return the port of an SRV record
+	 */
+	public int getSRVPort(int index) {
+		return readShort(getSRVRdataOffset(index) + 4);
+	}
+	
+	/**
+	 * @return the target host name of an SRV record
+	 */
+	public String getSRVTarget(int index) {
+		// skip priority, weight and port
+		return readName(getSRVRdataOffset(index) + 6);
+	}
+	
+	public DNSName getSRVTargetDNSName(int index) {
+		return readDNSName(getSRVRdataOffset(index) + 6);
+	}
+	
+	/**
+	 * @throws DNSException if the rdata is too short for an SRV record
+	 */
+	private int getSRVRdataOffset(int index) {
+		if (getRdataLength(index) < SRV_MIN_LENGTH) {
+			throw new DNSException("bad SRV rdata");
+		}
+		return getRdataOffset(index);
+	}
+	
+	/**
+	 * @return the address of an A or AAAA record
+	 */
+	public InetAddress getAddress(int index) {
+		try {
+			return InetAddress.getByAddress(copyRdata(index));
+		} catch (UnknownHostException e) {
+			throw new DNSException("problem parsing rdata", e);
+		}
+	}
+	
+	/**
+	 * @return the attributes of a TXT record, which keep a copy of its rdata
+	 */
+	public DNSTextRecord getTextRecord(int index) {
+		return new DNSTextRecord(bytes, getRdataOffset(index), getRdataLength(index));
+	}
+	
+	/**
+	 * Decode the key=value strings of a TXT record into the supplied map.
+	 *
+	 * @see #getTextRecord(int)
+	 */
+	public void readAttributes(int index, Map<String, String> map) {
+		map.putAll(getTextRecord(index));
+	}
+	
+	/**
+	 * Find the next record of the given type.
+	 *
+	 * @param type the numeric record type, see {@link DNSComponent.Type#qtype}
+	 * @param from the record index to start searching at
+	 * @return the record index or -1 if there is none
+	 */
+	public int findRecord(int type, int from) {
+		int recordCount = getRecordCount();
+		for (int i = from; i < recordCount; i++) {
+			if (readShort(recordFixedOffsets[i]) == type) return i;
+		}
+		return -1;
+	}
+	
+	private void checkQuestion(int index) {
+		if (index < 0 || index >= questionCount) {
+			throw new IndexOutOfBoundsException("question " + index + " of " + questionCount);
+		}
+	}
+	
+	private void checkRecord(int index) {
+		if (index < 0 || index >= getRecordCount()) {
+			throw new IndexOutOfBoundsException("record " + index + " of " + getRecordCount());
+		}
+	}
+	
+}
@@ -0,0 +1,229 @@
+package com.cafbit.netlib.dns;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, interned domain name.
+ * <p>
+ * A name holds its uncompressed wire format, the offsets of its labels and a
+ * hash which ignores the case of ASCII letters, like DNS does when comparing
+ * names. Names read from messages are interned through a bounded table, so the
+ * few hundred names which repeat endlessly on a network are decoded once and
+ * looked up without allocating afterwards. Comparing two names is then usually
+ * an identity check.
+ * <p>
+ * Equal names which differ in case share one instance, its string form is the
+ * spelling seen first.
+ * <p>
+ * see: http://www.ietf.org/rfc/rfc1035.txt sections 2.3.3 and 3.1
+ */
+public final class DNSName {
+	
+	private static final int TABLE_SIZE = 4096;
+	private static final int PROBES = 4;
+	private static final int MAX_NAME_LENGTH = 255;
+	
+	// interned names, an open addressing table which overwrites entries when a probe sequence is full.
+	// entries are immutable, so racy reads and writes of single slots are safe.
+	private static final DNSName[] table = new DNSName[TABLE_SIZE];
+	
+	// uncompressed wire format including the terminating zero
+	private final byte[] bytes;
+	// offset of every label in bytes
+	private final byte[] labels;
+	private final int hash;
+	// derived strings, computed on demand (racy but idempotent, like String.hashCode)
+	private String string;
+	private String serviceType;
+	private String serviceName;
+	
+	private DNSName(byte[] bytes, int hash) {
+		this.bytes = bytes;
+		this.hash = hash;
+		int count = 0;
+		for (int offset = 0; bytes[offset] != 0; offset += (bytes[offset] & 0xFF) + 1) {
+			count++;
+		}
+		labels = new byte[count];
+		int offset = 0;
+		for (int i = 0; i < count; i++) {
+			labels[i] = (byte) offset;
+			offset += (bytes[offset] & 0xFF) + 1;
+		}
+	}
+	
+	/**
+	 * Get the interned name for a dotted string like "_ipp._tcp.local".
+	 * A trailing dot and empty labels are ignored.
+	 *
+	 * @throws DNSException if a label or the name is too long
+	 */
+	public static DNSName of(String name) {
+		byte[] wire = new byte[MAX_NAME_LENGTH];
+		int length = 0;
+		for (String label : name.split("\\.")) {
+			if (label.isEmpty()) continue;
+			byte[] encoded = DNSBuffer.stringToBytes(label);
+			if (encoded.length > 63) {
+				throw new DNSException("label length > 63");
+			}
+			if (length + 1 + encoded.length + 1 > MAX_NAME_LENGTH) {
+				throw new DNSException("name longer than " + MAX_NAME_LENGTH + " bytes");
+			}
+			wire[length++] = (byte) encoded.length;
+			System.arraycopy(encoded, 0, wire, length, encoded.length);
+			length += encoded.length;
+		}
+		wire[length++] = 0;
+		return intern(wire, 0, length);
+	}
+	
+	/**
+	 * Get the interned name for an uncompressed wire format name.
+	 * The bytes are copied if the name has not been interned yet, so the caller may reuse them.
+	 */
+	static DNSName intern(byte[] wire, int offset, int length) {
+		int hash = hash(wire, offset, length);
+		int slot = hash & (TABLE_SIZE - 1);
+		int free = -1;
+		for (int i = 0; i < PROBES; i++) {
+			int index = (slot + i) & (TABLE_SIZE - 1);
+			DNSName name = table[index];
+			if (name == null) {
+				if (free == -1) free = index;
+				continue;
+			}
+			if (name.hash == hash && name.matches(wire, offset, length)) return name;
+		}
+		DNSName name = new DNSName(Arrays.copyOfRange(wire, offset, offset + length), hash);
+		table[free == -1 ? slot : free] = name;
+		return name;
+	}
+	
+	private static int hash(byte[] wire, int offset, int length) {
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + toLower(wire[i]);
+		}
+		// spread the bits, the table only uses the low ones
+		return hash ^ (hash >>> 16);
+	}
+	
+	private static int toLower(int b) {
+		return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+	}
+	
+	private boolean matches(byte[] wire, int offset, int length) {
+		if (bytes.length != length) return false;
+		for (int i = 0; i < length; i++) {
+			if (bytes[i] != wire[offset + i] && toLower(bytes[i]) != toLower(wire[offset + i])) return false;
+		}
+		return true;
+	}
+	
+	public int getLabelCount() {
+		return labels.length;
+	}
+	
+	public String getLabel(int index) {
+		int offset = labels[index] & 0xFF;
+		return DNSBuffer.bytesToString(bytes, offset + 1, bytes[offset] & 0xFF);
+	}
+	
+	/**
+	 * @return the name without its first labels, e.g. "_ipp._tcp.local" for label 1 of "Printer._ipp._tcp.local"
+	 */
+	public DNSName suffix(int fromLabel) {
+		if (fromLabel == 0) return this;
+		int offset = fromLabel == labels.length ? bytes.length - 1 : labels[fromLabel] & 0xFF;
+		return intern(bytes, offset, bytes.length - offset);
+	}
+	
+	/**
+	 * @return whether this name is the given name or one of its subdomains
+	 */
+	public boolean endsWith(DNSName suffix) {
+		int offset = bytes.length - suffix.bytes.length;
+		if (offset < 0) return false;
+		if (offset > 0 && !isLabelOffset(offset)) return false;
+		return suffix.matches(bytes, offset, suffix.bytes.length);
+	}
+	
+	private boolean isLabelOffset(int offset) {
+		for (byte label : labels) {
+			if ((label & 0xFF) == offset) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return the length of the uncompressed wire format
+	 */
+	public int length() {
+		return bytes.length;
+	}
+	
+	/**
+	 * Copy the uncompressed wire format into a buffer.
+	 */
+	public void getBytes(byte[] destination, int offset) {
+		System.arraycopy(bytes, 0, destination, offset, bytes.length);
+	}
+	
+	/**
+	 * @return the service type of a service instance name, computed once per name
+	 * @see DNSMessage#getServiceType(String)
+	 */
+	public String getServiceType() {
+		String serviceType = this.serviceType;
+		if (serviceType == null) {
+			serviceType = DNSMessage.getServiceType(toString());
+			this.serviceType = serviceType;
+		}
+		return serviceType;
+	}
+	
+	/**
+	 * @return the service name of a service instance name, computed once per name
+	 * @see DNSMessage#getServiceName(String)
+	 */
+	public String getServiceName() {
+		String serviceName = this.serviceName;
+		if (serviceName == null) {
+			serviceName = DNSMessage.getServiceName(toString());
+			this.serviceName = serviceName;
+		}
+		return serviceName;
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof DNSName)) return false;
+		DNSName name = (DNSName) o;
+		return hash == name.hash && matches(name.bytes, 0, name.bytes.length);
+	}
+	
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+	
+	/**
+	 * @return the dotted name without a trailing dot, e.g. "_ipp._tcp.local"
+	 */
+	@Override
+	public String toString() {
+		String string = this.string;
+		if (string == null) {
+			StringBuilder sb = new StringBuilder(bytes.length);
+			for (int i = 0; i < labels.length; i++) {
+				if (i > 0) sb.append('.');
+				sb.append(getLabel(i));
+			}
+			string = sb.toString();
+			this.string = string;
+		}
+		return string;
+	}
+}
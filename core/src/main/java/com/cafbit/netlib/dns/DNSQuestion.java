@@ -33,6 +33,18 @@ public class DNSQuestion extends DNSComponent {
     public DNSQuestion(DNSBuffer buffer) {
         parse(buffer);
     }
+
+    /**
+     * Materialize the question at the given index of a message view.
+     */
+    public DNSQuestion(DNSMessageView view, int index) {
+        name = view.getQuestionName(index);
+        type = Type.getType(view.getQuestionType(index));
+        int qclass = view.getQuestionClass(index);
+        if (qclass != 1) {
+            throw new DNSException("only class IN supported.  (got "+qclass+")");
+        }
+    }
     
     /**
      * Return the expected byte length of this question.
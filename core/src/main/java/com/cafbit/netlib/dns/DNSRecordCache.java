@@ -0,0 +1,491 @@
+package com.cafbit.netlib.dns;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * A TTL-aware cache of received resource records.
+ * <p>
+ * Records are keyed by name, type and rdata. The cache implements the
+ * Multicast DNS cache maintenance rules: cache-flush records replace older
+ * members of their record set, goodbye records (TTL 0) expire after one
+ * second, and records become due for a refresh query at 80%, 85%, 90% and
+ * 95% of their lifetime.
+ * <p>
+ * The next expiry or refresh time of every record is kept in a priority queue,
+ * so finding and handling the due records costs O(log n) per record instead
+ * of a scan of the whole cache.
+ * <p>
+ * see: https://tools.ietf.org/html/rfc6762 sections 5.2, 10.1 and 10.2
+ * <p>
+ * All times are milliseconds of a monotonic clock supplied by the caller.
+ * This class is not thread safe.
+ */
+public class DNSRecordCache {
+	
+	/**
+	 * Remaining lifetime of a record which has been flushed or said goodbye.
+	 */
+	public static final long FLUSH_DELAY = 1000;
+	
+	private static final int[] REFRESH_PERCENT = {80, 85, 90, 95};
+	private static final int REFRESH_JITTER_PERCENT = 2;
+	
+	private final Map<Key, Record> records = new HashMap<>();
+	private final Map<Key, List<Record>> recordSets = new HashMap<>();
+	// entries whose time differs from their record's scheduled time are stale and skipped
+	private final PriorityQueue<Deadline> deadlines = new PriorityQueue<>();
+	// records which have reached a refresh point, until refresh() collects them
+	private final List<Record> refreshDue = new ArrayList<>();
+	private final Random random = new Random();
+	private Listener listener;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	
+	public DNSRecordCache() {
+	}
+	
+	public DNSRecordCache(Listener listener) {
+		this.listener = listener;
+	}
+	
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+	
+	/**
+	 * Add or refresh the record at the given index of a message view.
+	 *
+	 * @param view  the indexed message
+	 * @param index the record index
+	 * @param now   the current monotonic time
+	 * @return the cached record, or null if the record was not cached
+	 */
+	public Record put(DNSMessageView view, int index, long now) {
+		if (view.getRecordClass(index) != 1) return null;
+		int type = view.getRecordType(index);
+		DNSName name = view.getRecordDNSName(index);
+		DNSName rdataName = rdataName(view, index, type);
+		Key key = new Key(name, type, keyRdata(view, index, rdataName), rdataName);
+		Record record = records.get(key);
+		int ttl = view.getRecordTtl(index);
+		// TTLs with the most significant bit set are treated as zero
+		// see: https://tools.ietf.org/html/rfc2181 section 8
+		if (ttl < 0) ttl = 0;
+		
+		if (ttl == 0) {
+			// goodbye, keep the record around for one more second
+			if (record != null && record.expires > now + FLUSH_DELAY) {
+				record.expires = now + FLUSH_DELAY;
+				record.refreshStep = REFRESH_PERCENT.length;
+				schedule(record);
+			}
+			return record;
+		}
+		
+		if (view.isCacheFlush(index)) {
+			List<Record> recordSet = recordSets.get(key.recordSet());
+			if (recordSet != null) {
+				for (Record member : recordSet) {
+					if (member == record) continue;
+					if (now - member.received > FLUSH_DELAY && member.expires > now + FLUSH_DELAY) {
+						member.expires = now + FLUSH_DELAY;
+						member.refreshStep = REFRESH_PERCENT.length;
+						schedule(member);
+					}
+				}
+			}
+		}
+		
+		if (record == null) {
+			misses++;
+			record = new Record(key, type, view.copyRdata(index));
+			records.put(key, record);
+			List<Record> recordSet = recordSets.get(key.recordSet());
+			if (recordSet == null) {
+				recordSet = new LinkedList<>();
+				recordSets.put(key.recordSet(), recordSet);
+			}
+			recordSet.add(record);
+		} else {
+			hits++;
+		}
+		record.ttl = ttl;
+		record.received = now;
+		record.expires = now + ttl * 1000L;
+		record.refreshStep = 0;
+		record.jitter = random.nextInt(REFRESH_JITTER_PERCENT + 1);
+		schedule(record);
+		return record;
+	}
+	
+	/**
+	 * Remove all expired records, notifying the listener about each one.
+	 *
+	 * @return the removed records
+	 */
+	public List<Record> expire(long now) {
+		List<Record> expired = poll(now);
+		if (expired == null) return Collections.emptyList();
+		evict(expired);
+		return expired;
+	}
+	
+	/**
+	 * Collect the records which have reached their next refresh point.
+	 * Every record is returned at most once per refresh point.
+	 *
+	 * @return the records which should be queried for again
+	 */
+	public List<Record> refresh(long now) {
+		List<Record> due = new LinkedList<>();
+		refresh(now, due);
+		return due;
+	}
+	
+	/**
+	 * Like refresh(long), but adds the records to the given collection, so that the caller can reuse it.
+	 * Records which have expired meanwhile are removed as by expire(long).
+	 */
+	public void refresh(long now, Collection<Record> due) {
+		List<Record> expired = poll(now);
+		if (expired != null) evict(expired);
+		for (int i = 0; i < refreshDue.size(); i++) {
+			Record record = refreshDue.get(i);
+			// skip records which expired since they became due
+			if (records.get(record.key) == record) due.add(record);
+		}
+		refreshDue.clear();
+	}
+	
+	/**
+	 * @return the time of the next refresh or expiry, or Long.MAX_VALUE if the cache is empty
+	 */
+	public long nextEvent() {
+		Deadline next;
+		while ((next = deadlines.peek()) != null && next.time != next.record.scheduled) {
+			deadlines.poll();
+		}
+		// may be earlier than needed if the record has been received again since, which costs a poll
+		return next == null ? Long.MAX_VALUE : next.time;
+	}
+	
+	/**
+	 * Handle all deadlines up to now: remove expired records and move
+	 * records which reached a refresh point to refreshDue.
+	 *
+	 * @return the expired records, or null if there are none
+	 */
+	private List<Record> poll(long now) {
+		// most calls expire nothing, so only allocate the list when needed
+		List<Record> expired = null;
+		Deadline next;
+		while ((next = deadlines.peek()) != null && next.time <= now) {
+			deadlines.poll();
+			Record record = next.record;
+			if (next.time != record.scheduled) continue;
+			record.scheduled = Long.MAX_VALUE;
+			if (record.expires <= now) {
+				records.remove(record.key);
+				Key recordSetKey = record.key.recordSet();
+				List<Record> recordSet = recordSets.get(recordSetKey);
+				recordSet.remove(record);
+				if (recordSet.isEmpty()) recordSets.remove(recordSetKey);
+				if (expired == null) expired = new LinkedList<>();
+				expired.add(record);
+				continue;
+			}
+			if (record.refreshStep < REFRESH_PERCENT.length && record.nextRefresh() <= now) {
+				// skip refresh points we might have missed
+				while (record.refreshStep < REFRESH_PERCENT.length && record.nextRefresh() <= now) {
+					record.refreshStep++;
+				}
+				refreshDue.add(record);
+			}
+			// the record has been received again since it was scheduled, or reached a refresh point
+			schedule(record);
+		}
+		return expired;
+	}
+	
+	private void evict(List<Record> expired) {
+		evictions += expired.size();
+		if (listener != null) {
+			for (Record record : expired) {
+				listener.onRecordExpired(record);
+			}
+		}
+	}
+	
+	/**
+	 * Queue the next deadline of a record if it is earlier than the queued one.
+	 * Later deadlines are queued when the earlier one is reached, so receiving
+	 * a record again does not touch the queue.
+	 */
+	private void schedule(Record record) {
+		long time = record.expires;
+		if (record.refreshStep < REFRESH_PERCENT.length) {
+			time = Math.min(time, record.nextRefresh());
+		}
+		if (time >= record.scheduled) return;
+		record.scheduled = time;
+		deadlines.add(new Deadline(time, record));
+	}
+	
+	/**
+	 * @return all cached records with the given name and type
+	 */
+	public List<Record> get(String name, int type) {
+		return get(DNSName.of(name), type);
+	}
+	
+	/**
+	 * Like get(String, int), but for callers which hold the interned name
+	 * and do not need to encode it again on every lookup.
+	 */
+	public List<Record> get(DNSName name, int type) {
+		List<Record> recordSet = recordSets.get(new Key(name, type, null, null));
+		if (recordSet == null) return new ArrayList<>();
+		return new ArrayList<>(recordSet);
+	}
+	
+	/**
+	 * Find the records pointing at a name, e.g. the SRV records of the services on a host.
+	 * This looks at every cached record, so it is meant for rare events like expiry.
+	 *
+	 * @param type      PTR or SRV
+	 * @param rdataName the target
+	 * @return all cached records of the given type with the given target
+	 */
+	public List<Record> getByRdataName(int type, DNSName rdataName) {
+		List<Record> found = new ArrayList<>();
+		for (Record record : records.values()) {
+			if (record.type == type && rdataName.equals(record.key.rdataName)) found.add(record);
+		}
+		return found;
+	}
+	
+	/**
+	 * Collect the cached records a query for the given name and type
+	 * should list as known answers, with their remaining TTL.
+	 * Records past half of their lifetime are left out, so that
+	 * responders send them again before they expire.
+	 * see: https://tools.ietf.org/html/rfc6762 section 7.1
+	 *
+	 * @param answers receives the known answers, so that the caller can reuse one list
+	 */
+	public void getKnownAnswers(String name, int type, long now, Collection<DNSAnswer> answers) {
+		getKnownAnswers(DNSName.of(name), type, now, answers);
+	}
+	
+	/**
+	 * Like getKnownAnswers(String, int, long, Collection), but for callers which hold
+	 * the interned name, e.g. of a browsed service type, and query for it repeatedly.
+	 */
+	public void getKnownAnswers(DNSName name, int type, long now, Collection<DNSAnswer> answers) {
+		List<Record> recordSet = recordSets.get(new Key(name, type, null, null));
+		if (recordSet == null) return;
+		DNSComponent.Type answerType = DNSComponent.Type.getType(type);
+		for (Record record : recordSet) {
+			if (!record.isKnownAnswer(now)) continue;
+			long remaining = record.expires - now;
+			byte[] rdata = record.rdata;
+			if (record.rdataName != null) {
+				// received rdata may point into the message it came from, the target is written from its name
+				rdata = Arrays.copyOf(rdata, type == DNSComponent.Type.SRV.qtype ? 6 : 0);
+			}
+			answers.add(new DNSAnswer(record.name, answerType, (int) (remaining / 1000), rdata, record.rdataName));
+		}
+	}
+	
+	/**
+	 * @return whether the record at the given index of a message view is cached
+	 *         and would be listed as a known answer by getKnownAnswers
+	 */
+	public boolean isKnownAnswer(DNSMessageView view, int index, long now) {
+		if (view.getRecordClass(index) != 1) return false;
+		int type = view.getRecordType(index);
+		DNSName rdataName = rdataName(view, index, type);
+		Record record = records.get(new Key(view.getRecordDNSName(index), type, keyRdata(view, index, rdataName), rdataName));
+		return record != null && record.isKnownAnswer(now);
+	}
+	
+	public int size() {
+		return records.size();
+	}
+	
+	/**
+	 * @return the number of received records which were already cached
+	 */
+	public long getHits() {
+		return hits;
+	}
+	
+	/**
+	 * @return the number of received records which were not cached yet
+	 */
+	public long getMisses() {
+		return misses;
+	}
+	
+	/**
+	 * @return the number of records removed by expire(), including flushed records and goodbyes
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+	
+	public void clear() {
+		records.clear();
+		recordSets.clear();
+		deadlines.clear();
+		refreshDue.clear();
+	}
+	
+	/**
+	 * @return the decoded PTR or SRV target, null for other types
+	 */
+	private static DNSName rdataName(DNSMessageView view, int index, int type) {
+		if (type == DNSComponent.Type.PTR.qtype) {
+			return view.getRdataDNSName(index);
+		} else if (type == DNSComponent.Type.SRV.qtype) {
+			return view.getSRVTargetDNSName(index);
+		}
+		return null;
+	}
+	
+	/**
+	 * Records carrying a name in their rdata may use name compression,
+	 * so they are keyed by the interned name and only the rdata before it.
+	 */
+	private static byte[] keyRdata(DNSMessageView view, int index, DNSName rdataName) {
+		if (rdataName == null) return view.copyRdata(index);
+		if (view.getRecordType(index) != DNSComponent.Type.SRV.qtype) return null;
+		// keep priority, weight and port, the view has rejected SRV rdata too short for them
+		byte[] rdata = new byte[6];
+		System.arraycopy(view.getBytes(), view.getRdataOffset(index), rdata, 0, 6);
+		return rdata;
+	}
+	
+	public interface Listener {
+		void onRecordExpired(Record record);
+	}
+	
+	/**
+	 * A cached resource record.
+	 */
+	public static class Record {
+		public final String name;
+		public final int type;
+		public final byte[] rdata;
+		/**
+		 * The decoded PTR or SRV target, null for other types.
+		 */
+		public final String rdataName;
+		public int ttl;
+		public long received;
+		public long expires;
+		private final Key key;
+		private int refreshStep;
+		private int jitter;
+		// the time of the live entry of this record in the deadline queue
+		private long scheduled = Long.MAX_VALUE;
+		
+		private Record(Key key, int type, byte[] rdata) {
+			this.key = key;
+			this.name = key.name.toString();
+			this.type = type;
+			this.rdata = rdata;
+			this.rdataName = key.rdataName == null ? null : key.rdataName.toString();
+		}
+		
+		public DNSName getDNSName() {
+			return key.name;
+		}
+		
+		/**
+		 * @return the interned PTR or SRV target, null for other types
+		 */
+		public DNSName getRdataDNSName() {
+			return key.rdataName;
+		}
+		
+		/**
+		 * Known answers have to be valid for at least half of their lifetime.
+		 */
+		private boolean isKnownAnswer(long now) {
+			return (expires - now) * 2 >= ttl * 1000L;
+		}
+		
+		private long nextRefresh() {
+			return received + ttl * 10L * (REFRESH_PERCENT[refreshStep] + jitter);
+		}
+		
+		public String toString() {
+			return name + " " + DNSComponent.Type.getType(type) + " " + (rdataName != null ? rdataName : "data[" + rdata.length + "]") + " ttl=" + ttl;
+		}
+	}
+	
+	private static class Deadline implements Comparable<Deadline> {
+		private final long time;
+		private final Record record;
+		
+		private Deadline(long time, Record record) {
+			this.time = time;
+			this.record = record;
+		}
+		
+		@Override
+		public int compareTo(Deadline other) {
+			return time < other.time ? -1 : time == other.time ? 0 : 1;
+		}
+	}
+	
+	private static class Key {
+		private final DNSName name;
+		private final int type;
+		private final byte[] rdata;
+		private final DNSName rdataName;
+		private final int hash;
+		
+		/**
+		 * @param rdata     the rdata, for PTR and SRV records only the part before the target
+		 * @param rdataName the PTR or SRV target, null for other types and record sets
+		 */
+		private Key(DNSName name, int type, byte[] rdata, DNSName rdataName) {
+			this.name = name;
+			this.type = type;
+			this.rdata = rdata;
+			this.rdataName = rdataName;
+			int hash = 31 * (31 * name.hashCode() + type) + Arrays.hashCode(rdata);
+			this.hash = 31 * hash + (rdataName == null ? 0 : rdataName.hashCode());
+		}
+		
+		private Key recordSet() {
+			return new Key(name, type, null, null);
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+			Key key = (Key) o;
+			return type == key.type && name.equals(key.name) && Arrays.equals(rdata, key.rdata)
+					&& (rdataName == null ? key.rdataName == null : rdataName.equals(key.rdataName));
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
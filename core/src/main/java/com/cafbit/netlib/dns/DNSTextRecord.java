@@ -0,0 +1,293 @@
+package com.cafbit.netlib.dns;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The key/value attributes of a TXT record, as an immutable map.
+ * <p>
+ * The map keeps a copy of the rdata and an array of key positions sorted by
+ * key, nothing else. Keys are found by binary search, values are decoded when
+ * they are read, and raw values are available through {@link #getBytes(String)},
+ * as values may be binary data.
+ * <p>
+ * Following DNS-SD, keys are compared ignoring the case of ASCII letters,
+ * strings without a key are ignored and only the first occurrence of a key counts.
+ * A key without "=" is a boolean attribute, it maps to null; a key with "="
+ * but no value maps to the empty string.
+ * <p>
+ * see: https://tools.ietf.org/html/rfc6763 section 6
+ */
+public final class DNSTextRecord extends AbstractMap<String, String> {
+	
+	public static final DNSTextRecord EMPTY = new DNSTextRecord(new byte[0], 0, 0);
+	
+	private final byte[] rdata;
+	// offset of the length byte of every string with a key << 8 | the key length, sorted by key
+	private final int[] entries;
+	private Set<Map.Entry<String, String>> entrySet;
+	
+	/**
+	 * Index TXT rdata, which is copied so that the caller may reuse the buffer.
+	 *
+	 * @throws DNSException if a string runs past the end of the rdata
+	 */
+	public DNSTextRecord(byte[] bytes, int offset, int length) {
+		rdata = Arrays.copyOfRange(bytes, offset, offset + length);
+		int[] entries = new int[count(rdata)];
+		int count = 0;
+		for (int i = 0; i < rdata.length; i += (rdata[i] & 0xFF) + 1) {
+			int keyLength = keyLength(rdata, i);
+			if (keyLength > 0) entries[count++] = i << 8 | keyLength;
+		}
+		// a stable sort keeps the first occurrence of a key in front
+		sort(entries, new int[count], 0, count);
+		int unique = 0;
+		for (int i = 0; i < count; i++) {
+			if (unique > 0 && compareKeys(entries[unique - 1], entries[i]) == 0) continue;
+			entries[unique++] = entries[i];
+		}
+		this.entries = unique == entries.length ? entries : Arrays.copyOf(entries, unique);
+	}
+	
+	@Override
+	public int size() {
+		return entries.length;
+	}
+	
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof String && find((String) key) >= 0;
+	}
+	
+	/**
+	 * @return the decoded value, null if the key is a boolean attribute or missing
+	 */
+	@Override
+	public String get(Object key) {
+		if (!(key instanceof String)) return null;
+		int index = find((String) key);
+		return index < 0 ? null : value(entries[index]);
+	}
+	
+	/**
+	 * @return a copy of the raw value, null if the key is a boolean attribute or missing
+	 */
+	public byte[] getBytes(String key) {
+		int index = find(key);
+		if (index < 0) return null;
+		int entry = entries[index];
+		int offset = entry >>> 8;
+		int keyLength = entry & 0xFF;
+		int stringLength = rdata[offset] & 0xFF;
+		if (keyLength == stringLength) return null;
+		int valueOffset = offset + 1 + keyLength + 1;
+		return Arrays.copyOfRange(rdata, valueOffset, offset + 1 + stringLength);
+	}
+	
+	/**
+	 * Check an attribute without decoding its value.
+	 *
+	 * @param value the value, null for a boolean attribute
+	 * @return whether the key is present with exactly the given value
+	 */
+	public boolean containsEntry(String key, String value) {
+		int index = find(key);
+		if (index < 0) return false;
+		int entry = entries[index];
+		int offset = entry >>> 8;
+		int keyLength = entry & 0xFF;
+		int stringLength = rdata[offset] & 0xFF;
+		if (keyLength == stringLength) return value == null;
+		if (value == null) return false;
+		int valueOffset = offset + 1 + keyLength + 1;
+		int valueLength = stringLength - keyLength - 1;
+		if (valueLength != value.length()) {
+			// only equal if the value is not ASCII
+			return valueLength > value.length() && value.equals(value(entry));
+		}
+		for (int i = 0; i < valueLength; i++) {
+			char c = value.charAt(i);
+			if (c >= 0x80) return value.equals(value(entry));
+			if (rdata[valueOffset + i] != c) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * @return whether both records have the same rdata and therefore equal attributes,
+	 *         which is much cheaper than comparing them as maps
+	 */
+	public boolean rdataEquals(DNSTextRecord other) {
+		return other == this || Arrays.equals(rdata, other.rdata);
+	}
+	
+	/**
+	 * @return the entries in key order
+	 */
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Map.Entry<String, String>>() {
+				@Override
+				public Iterator<Map.Entry<String, String>> iterator() {
+					return new Iterator<Map.Entry<String, String>>() {
+						private int index = 0;
+						
+						@Override
+						public boolean hasNext() {
+							return index < entries.length;
+						}
+						
+						@Override
+						public Map.Entry<String, String> next() {
+							if (index >= entries.length) throw new NoSuchElementException();
+							int entry = entries[index++];
+							return new SimpleImmutableEntry<>(key(entry), value(entry));
+						}
+						
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+				
+				@Override
+				public int size() {
+					return entries.length;
+				}
+			};
+		}
+		return entrySet;
+	}
+	
+	private String key(int entry) {
+		return DNSBuffer.bytesToString(rdata, (entry >>> 8) + 1, entry & 0xFF);
+	}
+	
+	private String value(int entry) {
+		int offset = entry >>> 8;
+		int keyLength = entry & 0xFF;
+		int stringLength = rdata[offset] & 0xFF;
+		if (keyLength == stringLength) return null;
+		return DNSBuffer.bytesToString(rdata, offset + 1 + keyLength + 1, stringLength - keyLength - 1);
+	}
+	
+	private int find(String key) {
+		byte[] encoded = null;
+		for (int i = 0; i < key.length(); i++) {
+			if (key.charAt(i) >= 0x80) {
+				encoded = DNSBuffer.stringToBytes(key);
+				break;
+			}
+		}
+		int low = 0;
+		int high = entries.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int cmp = encoded == null ? compareKey(entries[middle], key) : compareKey(entries[middle], encoded);
+			if (cmp < 0) {
+				low = middle + 1;
+			} else if (cmp > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Compare the key of an entry with an ASCII string.
+	 */
+	private int compareKey(int entry, String key) {
+		int offset = (entry >>> 8) + 1;
+		int length = entry & 0xFF;
+		int common = Math.min(length, key.length());
+		for (int i = 0; i < common; i++) {
+			int cmp = toLower(rdata[offset + i] & 0xFF) - toLower(key.charAt(i));
+			if (cmp != 0) return cmp;
+		}
+		return length - key.length();
+	}
+	
+	private int compareKey(int entry, byte[] key) {
+		int offset = (entry >>> 8) + 1;
+		int length = entry & 0xFF;
+		int common = Math.min(length, key.length);
+		for (int i = 0; i < common; i++) {
+			int cmp = toLower(rdata[offset + i] & 0xFF) - toLower(key[i] & 0xFF);
+			if (cmp != 0) return cmp;
+		}
+		return length - key.length;
+	}
+	
+	private int compareKeys(int a, int b) {
+		int offsetA = (a >>> 8) + 1;
+		int offsetB = (b >>> 8) + 1;
+		int lengthA = a & 0xFF;
+		int lengthB = b & 0xFF;
+		int common = Math.min(lengthA, lengthB);
+		for (int i = 0; i < common; i++) {
+			int cmp = toLower(rdata[offsetA + i] & 0xFF) - toLower(rdata[offsetB + i] & 0xFF);
+			if (cmp != 0) return cmp;
+		}
+		return lengthA - lengthB;
+	}
+	
+	/**
+	 * Merge sort entries[from, to) by key.
+	 */
+	private void sort(int[] entries, int[] scratch, int from, int to) {
+		if (to - from < 2) return;
+		int middle = (from + to) >>> 1;
+		sort(entries, scratch, from, middle);
+		sort(entries, scratch, middle, to);
+		if (compareKeys(entries[middle - 1], entries[middle]) <= 0) return;
+		System.arraycopy(entries, from, scratch, from, to - from);
+		int left = from;
+		int right = middle;
+		for (int i = from; i < to; i++) {
+			if (right >= to || (left < middle && compareKeys(scratch[left], scratch[right]) <= 0)) {
+				entries[i] = scratch[left++];
+			} else {
+				entries[i] = scratch[right++];
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of strings, after checking that all of them are in bounds
+	 */
+	private static int count(byte[] rdata) {
+		int count = 0;
+		for (int i = 0; i < rdata.length; i += (rdata[i] & 0xFF) + 1) {
+			if (i + (rdata[i] & 0xFF) + 1 > rdata.length) {
+				throw new DNSException("bad TXT rdata");
+			}
+			count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * @return the length of the key of the string at the given offset, the whole string if it has no "="
+	 */
+	private static int keyLength(byte[] rdata, int offset) {
+		int length = rdata[offset] & 0xFF;
+		for (int i = 0; i < length; i++) {
+			if (rdata[offset + 1 + i] == '=') return i;
+		}
+		return length;
+	}
+	
+	private static int toLower(int c) {
+		return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+	}
+}
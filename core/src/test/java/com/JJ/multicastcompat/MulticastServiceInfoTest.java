@@ -0,0 +1,120 @@
+package com.JJ.multicastcompat;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MulticastServiceInfoTest {
+	
+	@Test
+	public void attributesAreMergedByDefault() throws Exception {
+		MulticastServiceInfo known = service(1);
+		known.attributes = attributes("txtvers", "1", "Color", "T");
+		MulticastServiceInfo update = service(1);
+		update.attributes = attributes("Color", "F", "Duplex", "T");
+		
+		ServiceChanges changes = MulticastServiceInfo.diff(known, update);
+		assertEquals(Collections.singleton("Duplex"), changes.getAddedAttributes());
+		assertEquals(Collections.singleton("Color"), changes.getChangedAttributes());
+		assertTrue(changes.getRemovedAttributes().isEmpty());
+		assertEquals(attributes("Color", "F", "Duplex", "T", "txtvers", "1"),
+				new LinkedHashMap<>(MulticastServiceInfo.merge(known, update).attributes));
+	}
+	
+	@Test
+	public void completeTextRecordReplacesAttributes() throws Exception {
+		MulticastServiceInfo known = service(1);
+		known.attributes = attributes("txtvers", "1", "Color", "T");
+		MulticastServiceInfo update = service(1);
+		update.attributes = attributes("txtvers", "1");
+		update.attributesComplete = true;
+		
+		ServiceChanges changes = MulticastServiceInfo.diff(known, update);
+		assertEquals(Collections.singleton(ServiceChanges.Field.ATTRIBUTES), changes.getFields());
+		assertEquals(Collections.singleton("Color"), changes.getRemovedAttributes());
+		assertEquals(attributes("txtvers", "1"), new LinkedHashMap<>(MulticastServiceInfo.merge(known, update).attributes));
+	}
+	
+	@Test
+	public void emptyCompleteTextRecordRemovesAllAttributes() throws Exception {
+		MulticastServiceInfo known = service(1);
+		known.attributes = attributes("Color", "T");
+		MulticastServiceInfo update = service(1);
+		update.attributes = Collections.emptyMap();
+		
+		assertTrue(MulticastServiceInfo.diff(known, update).isEmpty());
+		update.attributesComplete = true;
+		assertEquals(Collections.singleton("Color"), MulticastServiceInfo.diff(known, update).getRemovedAttributes());
+		assertTrue(MulticastServiceInfo.merge(known, update).attributes.isEmpty());
+	}
+	
+	@Test
+	public void addressesAreCombinedByDefault() throws Exception {
+		MulticastServiceInfo known = service(1, 1);
+		MulticastServiceInfo update = service(2, 2);
+		
+		MulticastServiceInfo merged = MulticastServiceInfo.merge(known, update);
+		assertEquals(Arrays.asList(address(1), address(2)), merged.addresses);
+		// answering from another known address is no change
+		assertSame(merged, MulticastServiceInfo.merge(merged, service(1, 1)));
+	}
+	
+	@Test
+	public void completeAddressesReplaceAddresses() throws Exception {
+		MulticastServiceInfo known = service(1, 1, 2);
+		MulticastServiceInfo update = service(2, 2);
+		update.addressesComplete = true;
+		
+		ServiceChanges changes = MulticastServiceInfo.diff(known, update);
+		assertTrue(changes.contains(ServiceChanges.Field.ADDRESSES));
+		assertTrue(changes.contains(ServiceChanges.Field.HOST));
+		MulticastServiceInfo merged = MulticastServiceInfo.merge(known, update);
+		assertEquals(Arrays.asList(address(2)), merged.addresses);
+		assertEquals(address(2), merged.host);
+	}
+	
+	@Test
+	public void completeAddressesKeepRemainingHost() throws Exception {
+		MulticastServiceInfo known = service(1, 1, 2);
+		MulticastServiceInfo update = service(2, 1);
+		update.addressesComplete = true;
+		
+		ServiceChanges changes = MulticastServiceInfo.diff(known, update);
+		assertEquals(Collections.singleton(ServiceChanges.Field.ADDRESSES), changes.getFields());
+		assertEquals(address(1), MulticastServiceInfo.merge(known, update).host);
+		update.addresses = Arrays.asList(address(2), address(1));
+		assertTrue(MulticastServiceInfo.diff(known, update).isEmpty());
+	}
+	
+	private static MulticastServiceInfo service(int host, int... addresses) throws Exception {
+		MulticastServiceInfo serviceInfo = new MulticastServiceInfo("Printer", "_ipp._tcp.", address(host), 631);
+		if (addresses.length > 0) {
+			InetAddress[] list = new InetAddress[addresses.length];
+			for (int i = 0; i < addresses.length; i++) {
+				list[i] = address(addresses[i]);
+			}
+			serviceInfo.addresses = Arrays.asList(list);
+		}
+		return serviceInfo;
+	}
+	
+	private static InetAddress address(int host) throws Exception {
+		return InetAddress.getByAddress(new byte[]{10, 0, 0, (byte) host});
+	}
+	
+	private static Map<String, String> attributes(String... entries) {
+		Map<String, String> attributes = new LinkedHashMap<>();
+		for (int i = 0; i < entries.length; i += 2) {
+			attributes.put(entries[i], entries[i + 1]);
+		}
+		return attributes;
+	}
+}
@@ -0,0 +1,151 @@
+package com.JJ.multicastcompat;
+
+import com.JJ.multicastcompat.spi.DefaultPlatform;
+import com.cafbit.netlib.dns.DNSAnswer;
+import com.cafbit.netlib.dns.DNSComponent;
+import com.cafbit.netlib.dns.DNSMessage;
+import com.cafbit.netlib.dns.DNSMessageView;
+import com.cafbit.netlib.dns.DNSQuestion;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Discovers a service from a responder on the loopback interface,
+ * using a group and port of its own so that it does not interfere with
+ * the multicast DNS responders of the host.
+ * Skipped if the group can not be joined on the loopback interface.
+ */
+public class MulticastSocketTest {
+	
+	private static final int PORT = 45353;
+	
+	private InetAddress group;
+	private NetworkInterface loopback;
+	private java.net.MulticastSocket responder;
+	private MulticastSocket socket;
+	private final BlockingQueue<MulticastServiceInfo> found = new LinkedBlockingQueue<>();
+	
+	@Before
+	public void setUp() throws IOException {
+		group = InetAddress.getByName("239.255.77.251");
+		loopback = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+		Assume.assumeTrue(loopback != null && loopback.isUp());
+		responder = new java.net.MulticastSocket(PORT);
+		try {
+			// some loopback interfaces do not announce multicast support but deliver it anyway
+			responder.setNetworkInterface(loopback);
+			responder.joinGroup(new InetSocketAddress(group, PORT), loopback);
+		} catch (IOException e) {
+			Assume.assumeNoException(e);
+		}
+		responder.setSoTimeout(5000);
+	}
+	
+	@After
+	public void tearDown() {
+		if (socket != null) socket.end();
+		if (responder != null) responder.close();
+	}
+	
+	@Test
+	public void discoversServiceOnConfiguredGroupAndPort() throws Exception {
+		startDiscovery();
+		
+		DNSMessageView query = awaitQuery();
+		assertEquals(1, query.getQuestionCount());
+		assertEquals("_ipp._tcp.local", query.getQuestionName(0));
+		respond(address(1, 120));
+		
+		MulticastServiceInfo serviceInfo = found.poll(5, TimeUnit.SECONDS);
+		assertNotNull(serviceInfo);
+		assertEquals("Printer", serviceInfo.serviceName);
+		assertEquals(631, serviceInfo.port);
+		assertEquals(address(1), serviceInfo.host);
+	}
+	
+	@Test
+	public void reportsRemainingAddressesWhenOneExpires() throws Exception {
+		startDiscovery();
+		awaitQuery();
+		respond(address(1, 1), address(2, 120));
+		
+		MulticastServiceInfo serviceInfo = found.poll(5, TimeUnit.SECONDS);
+		assertEquals(Arrays.asList(address(1), address(2)), serviceInfo.addresses);
+		serviceInfo = found.poll(5, TimeUnit.SECONDS);
+		assertNotNull(serviceInfo);
+		assertTrue(serviceInfo.addressesComplete);
+		assertEquals(Arrays.asList(address(2)), serviceInfo.addresses);
+		assertEquals(address(2), serviceInfo.host);
+		assertEquals(631, serviceInfo.port);
+	}
+	
+	private void startDiscovery() throws IOException {
+		DefaultPlatform platform = new DefaultPlatform(Collections.singletonList(loopback),
+				Collections.singletonList(group), PORT);
+		socket = new MulticastSocket(platform, new MulticastListener() {
+			@Override
+			public void onServiceFound(MulticastServiceInfo serviceInfo) {
+				found.add(serviceInfo);
+			}
+			
+			@Override
+			public void onServiceLost(MulticastServiceInfo serviceInfo) {
+			}
+		}, false);
+		socket.start();
+		socket.discoverServices("_ipp._tcp.");
+	}
+	
+	private DNSMessageView awaitQuery() throws IOException {
+		byte[] buffer = new byte[1500];
+		while (true) {
+			DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+			responder.receive(packet);
+			// skip our own response looped back
+			if ((buffer[2] & 0x80) != 0) continue;
+			return new DNSMessageView(buffer, 0, packet.getLength());
+		}
+	}
+	
+	/**
+	 * Announce the printer with the given address records.
+	 */
+	private void respond(DNSAnswer... addresses) throws IOException {
+		List<DNSAnswer> answers = new ArrayList<>(Arrays.asList(
+				new DNSAnswer("_ipp._tcp.local", DNSComponent.Type.PTR, 4500, new byte[0], "Printer._ipp._tcp.local"),
+				new DNSAnswer("Printer._ipp._tcp.local", DNSComponent.Type.SRV, 120, new byte[]{0, 0, 0, 0, 0x02, 0x77}, "printer.local")));
+		answers.addAll(Arrays.asList(addresses));
+		byte[] packet = new DNSMessage(Collections.<DNSQuestion>emptyList(), answers).serialize();
+		// QR and AA
+		packet[2] = (byte) 0x84;
+		responder.send(new DatagramPacket(packet, packet.length, group, PORT));
+	}
+	
+	private static DNSAnswer address(int host, int ttl) {
+		return new DNSAnswer("printer.local", DNSComponent.Type.A, ttl, new byte[]{10, 0, 0, (byte) host}, null);
+	}
+	
+	private static InetAddress address(int host) throws IOException {
+		return InetAddress.getByAddress(new byte[]{10, 0, 0, (byte) host});
+	}
+}
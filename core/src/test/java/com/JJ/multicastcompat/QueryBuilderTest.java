@@ -0,0 +1,133 @@
+package com.JJ.multicastcompat;
+
+import com.cafbit.netlib.dns.DNSAnswer;
+import com.cafbit.netlib.dns.DNSComponent;
+import com.cafbit.netlib.dns.DNSMessage;
+import com.cafbit.netlib.dns.DNSMessageView;
+import com.cafbit.netlib.dns.DNSQuestion;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QueryBuilderTest {
+	
+	private static final String IPP = "_ipp._tcp.local";
+	private static final String HTTP = "_http._tcp.local";
+	private static final String PRINTER = "Printer._ipp._tcp.local";
+	private static final String HOST = "printer.local";
+	
+	@Test
+	public void questionsMatchSerializedMessage() {
+		QueryBuilder builder = new QueryBuilder(DNSComponent.Type.PTR, 1500);
+		builder.add(IPP);
+		builder.add(HTTP);
+		builder.begin();
+		assertTrue(builder.append(IPP));
+		assertTrue(builder.append(HTTP));
+		
+		assertEquals(2, builder.getQuestionCount());
+		assertPacketEquals(Arrays.asList(question(IPP), question(HTTP)), new ArrayList<DNSAnswer>(), builder, false);
+	}
+	
+	@Test
+	public void knownAnswersMatchSerializedMessage() {
+		QueryBuilder builder = new QueryBuilder(DNSComponent.Type.PTR, 1500);
+		builder.add(IPP);
+		builder.begin();
+		builder.append(IPP);
+		List<DNSAnswer> answers = Arrays.asList(
+				new DNSAnswer(IPP, DNSComponent.Type.PTR, 4000, new byte[0], PRINTER),
+				new DNSAnswer(IPP, DNSComponent.Type.PTR, 3000, new byte[0], "Other._ipp._tcp.local"),
+				new DNSAnswer(PRINTER, DNSComponent.Type.SRV, 100, new byte[]{0, 0, 0, 0, 0x02, 0x77}, HOST),
+				new DNSAnswer(HOST, DNSComponent.Type.A, 100, new byte[]{10, 0, 0, 1}, null));
+		for (DNSAnswer answer : answers) {
+			assertTrue(builder.appendAnswer(answer));
+		}
+		
+		assertPacketEquals(Arrays.asList(question(IPP)), answers, builder, false);
+	}
+	
+	@Test
+	public void namesAreCaseInsensitivelyCompressed() {
+		QueryBuilder builder = new QueryBuilder(DNSComponent.Type.PTR, 1500);
+		builder.add(IPP);
+		builder.add("_ipp._TCP.LOCAL.");
+		builder.begin();
+		builder.append(IPP);
+		int length = builder.finish(false);
+		builder.append("_ipp._TCP.LOCAL.");
+		
+		// the second question is a pointer to the first one
+		assertEquals(length + 2 + 4, builder.finish(false));
+	}
+	
+	@Test
+	public void namesNotAddedAreSkipped() {
+		QueryBuilder builder = new QueryBuilder(DNSComponent.Type.PTR, 1500);
+		builder.add(IPP);
+		builder.add(HTTP);
+		builder.remove(HTTP);
+		builder.begin();
+		
+		assertTrue(builder.append(HTTP));
+		assertTrue(builder.isEmpty());
+		assertTrue(builder.append(IPP));
+		assertFalse(builder.isEmpty());
+		assertEquals(1, builder.getQuestionCount());
+	}
+	
+	@Test
+	public void fullPacketIsLeftIntact() {
+		QueryBuilder builder = new QueryBuilder(DNSComponent.Type.PTR, 64);
+		builder.add(IPP);
+		builder.begin();
+		builder.append(IPP);
+		DNSAnswer first = new DNSAnswer(IPP, DNSComponent.Type.PTR, 4000, new byte[0], PRINTER);
+		DNSAnswer second = new DNSAnswer(IPP, DNSComponent.Type.PTR, 4000, new byte[0], "A very long instance name._ipp._tcp.local");
+		assertTrue(builder.appendAnswer(first));
+		assertFalse(builder.appendAnswer(second));
+		
+		assertPacketEquals(Arrays.asList(question(IPP)), Arrays.asList(first), builder, true);
+		DNSMessageView view = new DNSMessageView(builder.getPacket(), 0, builder.finish(true));
+		assertEquals(DNSMessage.FLAG_TC, view.getFlags());
+	}
+	
+	@Test
+	public void beginDiscardsPreviousPacket() {
+		QueryBuilder builder = new QueryBuilder(DNSComponent.Type.PTR, 1500);
+		builder.add(IPP);
+		builder.add(HTTP);
+		builder.begin();
+		builder.append(IPP);
+		builder.appendAnswer(new DNSAnswer(IPP, DNSComponent.Type.PTR, 4000, new byte[0], PRINTER));
+		builder.finish(true);
+		builder.begin();
+		builder.append(HTTP);
+		
+		assertPacketEquals(Arrays.asList(question(HTTP)), new ArrayList<DNSAnswer>(), builder, false);
+	}
+	
+	private static DNSQuestion question(String name) {
+		return new DNSQuestion(DNSComponent.Type.PTR, name);
+	}
+	
+	/**
+	 * Both encoders compress every name against all names before it,
+	 * so the packets are expected to be identical.
+	 */
+	private static void assertPacketEquals(List<DNSQuestion> questions, List<DNSAnswer> answers, QueryBuilder builder, boolean truncated) {
+		DNSMessage message = new DNSMessage(questions, answers);
+		message.setTruncated(truncated);
+		byte[] expected = message.serialize();
+		int length = builder.finish(truncated);
+		assertArrayEquals(expected, Arrays.copyOf(builder.getPacket(), length));
+	}
+}
@@ -0,0 +1,133 @@
+package com.JJ.multicastcompat;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QuerySchedulerTest {
+	
+	private static final String IPP = "_ipp._tcp.local";
+	private static final String HTTP = "_http._tcp.local";
+	
+	private final QueryScheduler scheduler = new QueryScheduler();
+	private final List<String> due = new ArrayList<>();
+	
+	@Test
+	public void firstQueryAfterShortDelay() {
+		scheduler.add(IPP, 0);
+		
+		long first = scheduler.nextDeadline();
+		assertTrue(first >= 20 && first <= 120);
+		scheduler.due(first - 1, due);
+		assertTrue(due.isEmpty());
+		scheduler.due(first, due);
+		assertEquals(Arrays.asList(IPP), due);
+	}
+	
+	@Test
+	public void intervalDoublesUpToOneHour() {
+		scheduler.add(IPP, 0);
+		long now = send();
+		long interval = QueryScheduler.INITIAL_INTERVAL;
+		for (int i = 0; i < 20; i++) {
+			long next = send();
+			assertEquals(interval, next - now);
+			now = next;
+			interval = Math.min(interval * 2, QueryScheduler.MAX_INTERVAL);
+		}
+		assertEquals(QueryScheduler.MAX_INTERVAL, interval);
+	}
+	
+	@Test
+	public void addingAgainRestartsSchedule() {
+		scheduler.add(IPP, 0);
+		for (int i = 0; i < 5; i++) {
+			send();
+		}
+		long now = scheduler.nextDeadline();
+		scheduler.add(IPP, now);
+		assertTrue(scheduler.nextDeadline() <= now + 120);
+	}
+	
+	@Test
+	public void queriesDueShortlyAfterShareThePacket() {
+		scheduler.add(IPP, 0);
+		scheduler.add(HTTP, 0);
+		long now = send();
+		
+		// both are due one second later
+		scheduler.due(now + 1000, due);
+		assertEquals(2, due.size());
+		due.clear();
+		// one is ahead of the other by less than the aggregation window
+		scheduler.remove(HTTP);
+		scheduler.add(HTTP, now + 1000 + 1600);
+		scheduler.due(now + 3000, due);
+		assertEquals(Arrays.asList(IPP, HTTP), due);
+	}
+	
+	@Test
+	public void queriesDueLaterAreNotPulledForward() {
+		scheduler.add(IPP, 0);
+		long now = send();
+		// due more than the aggregation window after the other one
+		scheduler.add(HTTP, now + 1500);
+		
+		scheduler.due(now + 1000, due);
+		assertEquals(Arrays.asList(IPP), due);
+	}
+	
+	@Test
+	public void questionSuppressesQueryInSecondHalfOfInterval() {
+		scheduler.add(IPP, 0);
+		long now = send();
+		
+		// our query is due in 900ms, too early
+		assertFalse(scheduler.questionObserved(IPP, now + 100));
+		assertEquals(now + 1000, scheduler.nextDeadline());
+		// our query is due in 500ms
+		assertTrue(scheduler.questionObserved(IPP, now + 500));
+		// counts as sent, the interval has doubled
+		assertEquals(now + 500 + 2000, scheduler.nextDeadline());
+		scheduler.due(now + 1000, due);
+		assertTrue(due.isEmpty());
+	}
+	
+	@Test
+	public void questionForUnknownNameIsIgnored() {
+		scheduler.add(IPP, 0);
+		long next = scheduler.nextDeadline();
+		
+		assertFalse(scheduler.questionObserved(HTTP, next));
+		assertEquals(next, scheduler.nextDeadline());
+	}
+	
+	@Test
+	public void removedNamesAreNotQueried() {
+		scheduler.add(IPP, 0);
+		scheduler.remove(IPP);
+		
+		assertFalse(scheduler.contains(IPP));
+		assertEquals(Long.MAX_VALUE, scheduler.nextDeadline());
+	}
+	
+	/**
+	 * Send the next due query.
+	 *
+	 * @return the time it has been sent at
+	 */
+	private long send() {
+		long now = scheduler.nextDeadline();
+		due.clear();
+		scheduler.due(now, due);
+		assertFalse(due.isEmpty());
+		due.clear();
+		return now;
+	}
+}
@@ -0,0 +1,129 @@
+package com.JJ.multicastcompat;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ServiceStoreTest {
+	
+	private static final String PRINTER = "printer._ipp._tcp.local";
+	private static final String SCANNER = "scanner._uscan._tcp.local";
+	
+	@Test
+	public void reportsAddedUpdatedAndRemoved() throws Exception {
+		ServiceStore store = new ServiceStore();
+		store.put(service("Printer", "_ipp._tcp.", 1));
+		store.put(service("Scanner", "_uscan._tcp.", 2));
+		long since = store.getVersion();
+		assertEquals(2, since);
+		
+		MulticastServiceInfo moved = service("Printer", "_ipp._tcp.", 3);
+		store.put(moved);
+		store.remove(SCANNER);
+		MulticastServiceInfo added = service("Other", "_ipp._tcp.", 4);
+		store.put(added);
+		
+		ServiceStore.Changes changes = store.changesSince(since);
+		assertFalse(changes.isReset());
+		assertEquals(5, changes.getVersion());
+		assertEquals(Collections.singletonMap("other._ipp._tcp.local", added), changes.getAdded());
+		assertEquals(Collections.singletonMap(PRINTER, moved), changes.getUpdated());
+		assertEquals(Collections.singleton(SCANNER), changes.getRemoved());
+	}
+	
+	@Test
+	public void combinesChangesOfOneService() throws Exception {
+		ServiceStore store = new ServiceStore();
+		store.put(service("Printer", "_ipp._tcp.", 1));
+		MulticastServiceInfo latest = service("Printer", "_ipp._tcp.", 2);
+		store.put(latest);
+		store.put(service("Scanner", "_uscan._tcp.", 3));
+		store.remove(SCANNER);
+		
+		// added and updated is added, added and removed is nothing
+		ServiceStore.Changes changes = store.changesSince(0);
+		assertEquals(Collections.singletonMap(PRINTER, latest), changes.getAdded());
+		assertTrue(changes.getUpdated().isEmpty());
+		assertTrue(changes.getRemoved().isEmpty());
+		
+		// removed and added again is updated
+		long since = store.getVersion();
+		store.remove(PRINTER);
+		store.put(latest);
+		changes = store.changesSince(since);
+		assertTrue(changes.getAdded().isEmpty());
+		assertEquals(Collections.singletonMap(PRINTER, latest), changes.getUpdated());
+	}
+	
+	@Test
+	public void noChangesAtCurrentVersion() throws Exception {
+		ServiceStore store = new ServiceStore();
+		store.put(service("Printer", "_ipp._tcp.", 1));
+		
+		ServiceStore.Changes changes = store.changesSince(store.getVersion());
+		assertTrue(changes.isEmpty());
+		assertFalse(changes.isReset());
+		assertEquals(store.getVersion(), changes.getVersion());
+	}
+	
+	@Test
+	public void resetsWhenChangesHaveBeenDropped() throws Exception {
+		ServiceStore store = new ServiceStore(2);
+		store.put(service("Printer", "_ipp._tcp.", 1));
+		store.put(service("Scanner", "_uscan._tcp.", 2));
+		store.remove(SCANNER);
+		MulticastServiceInfo latest = service("Printer", "_ipp._tcp.", 3);
+		store.put(latest);
+		
+		ServiceStore.Changes changes = store.changesSince(1);
+		assertTrue(changes.isReset());
+		assertEquals(4, changes.getVersion());
+		assertEquals(Collections.singletonMap(PRINTER, latest), changes.getAdded());
+		assertTrue(changes.getRemoved().isEmpty());
+		// the last two changes are still in the log
+		changes = store.changesSince(2);
+		assertFalse(changes.isReset());
+		assertEquals(Collections.singleton(SCANNER), changes.getRemoved());
+	}
+	
+	@Test
+	public void clearReportsAllRemoved() throws Exception {
+		ServiceStore store = new ServiceStore();
+		store.put(service("Printer", "_ipp._tcp.", 1));
+		store.put(service("Scanner", "_uscan._tcp.", 2));
+		long since = store.getVersion();
+		store.clear();
+		
+		assertEquals(0, store.size());
+		assertEquals(2, store.changesSince(since).getRemoved().size());
+		assertTrue(store.snapshot().getServices().isEmpty());
+	}
+	
+	@Test
+	public void snapshotFollowsChanges() throws Exception {
+		ServiceStore store = new ServiceStore();
+		MulticastServiceInfo printer = service("Printer", "_ipp._tcp.", 1);
+		store.put(printer);
+		ServiceStore.Snapshot first = store.snapshot();
+		assertSame(first, store.snapshot());
+		
+		store.put(service("Scanner", "_uscan._tcp.", 2));
+		store.remove(SCANNER);
+		ServiceStore.Snapshot second = store.snapshot();
+		assertEquals(3, second.getVersion());
+		assertEquals(Collections.singletonMap(PRINTER, printer), second.getServices());
+		assertEquals(1, first.getVersion());
+		assertEquals(Arrays.asList(PRINTER), Arrays.asList(first.getServices().keySet().toArray()));
+	}
+	
+	private static MulticastServiceInfo service(String name, String type, int host) throws Exception {
+		return new MulticastServiceInfo(name, type, InetAddress.getByAddress(new byte[]{10, 0, 0, (byte) host}), 631);
+	}
+}
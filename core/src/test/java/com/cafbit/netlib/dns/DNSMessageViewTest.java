@@ -0,0 +1,167 @@
+package com.cafbit.netlib.dns;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DNSMessageViewTest {
+	
+	private static final String TYPE = "_ipp._tcp.local";
+	private static final String INSTANCE = "Printer._ipp._tcp.local";
+	private static final String HOST = "printer.local";
+	
+	@Test
+	public void readsCompressedResponse() throws Exception {
+		byte[] packet = response(
+				new DNSAnswer(TYPE, DNSComponent.Type.PTR, 4500, new byte[0], INSTANCE),
+				new DNSAnswer(INSTANCE, DNSComponent.Type.SRV, 120, new byte[]{0, 0, 0, 0, 0x02, 0x77}, HOST),
+				new DNSAnswer(INSTANCE, DNSComponent.Type.TXT, 4500, txt("txtvers=1", "Color=T", "Duplex"), null),
+				new DNSAnswer(HOST, DNSComponent.Type.A, 120, new byte[]{(byte) 192, (byte) 168, 1, 20}, null));
+		DNSMessageView view = new DNSMessageView(packet);
+		
+		assertTrue(view.isResponse());
+		assertEquals(0, view.getQuestionCount());
+		assertEquals(4, view.getRecordCount());
+		assertEquals(DNSComponent.Type.PTR.qtype, view.getRecordType(0));
+		assertEquals(TYPE, view.getRecordName(0));
+		assertEquals(4500, view.getRecordTtl(0));
+		assertEquals(INSTANCE, view.getRdataName(0));
+		assertEquals(DNSName.of(INSTANCE), view.getRdataDNSName(0));
+		// the names of the later records are compression pointers to the first ones
+		assertEquals(INSTANCE, view.getRecordName(1));
+		assertEquals(631, view.getSRVPort(1));
+		assertEquals(HOST, view.getSRVTarget(1));
+		assertEquals(DNSName.of(HOST), view.getSRVTargetDNSName(1));
+		DNSTextRecord attributes = view.getTextRecord(2);
+		assertEquals(3, attributes.size());
+		assertEquals("T", attributes.get("color"));
+		assertTrue(attributes.containsKey("Duplex"));
+		assertEquals(null, attributes.get("Duplex"));
+		assertEquals(InetAddress.getByAddress(new byte[]{(byte) 192, (byte) 168, 1, 20}), view.getAddress(3));
+		assertEquals(3, view.findRecord(DNSComponent.Type.A.qtype, 0));
+		assertEquals(-1, view.findRecord(DNSComponent.Type.AAAA.qtype, 0));
+	}
+	
+	@Test
+	public void readsQuestions() {
+		byte[] packet = new DNSMessage(Arrays.asList(
+				new DNSQuestion(DNSComponent.Type.PTR, TYPE),
+				new DNSQuestion(DNSComponent.Type.PTR, "_http._tcp.local"))).serialize();
+		DNSMessageView view = new DNSMessageView(packet);
+		
+		assertEquals(false, view.isResponse());
+		assertEquals(2, view.getQuestionCount());
+		assertEquals(TYPE, view.getQuestionName(0));
+		assertEquals("_http._tcp.local", view.getQuestionName(1));
+		assertEquals(DNSComponent.Type.PTR.qtype, view.getQuestionType(1));
+		assertEquals(1, view.getQuestionClass(1));
+	}
+	
+	@Test
+	public void rejectsPointerToItself() {
+		byte[] packet = query(0xC0, 12);
+		DNSMessageView view = new DNSMessageView(packet);
+		try {
+			view.getQuestionName(0);
+			fail();
+		} catch (DNSException expected) {
+		}
+	}
+	
+	@Test
+	public void rejectsPointerLoop() {
+		// "a" followed by a pointer to the first label
+		byte[] packet = query(1, 'a', 0xC0, 12);
+		DNSMessageView view = new DNSMessageView(packet);
+		try {
+			view.getQuestionName(0);
+			fail();
+		} catch (DNSException expected) {
+		}
+	}
+	
+	@Test
+	public void rejectsForwardPointer() {
+		// points behind itself, into the question type
+		byte[] packet = query(0xC0, 14);
+		DNSMessageView view = new DNSMessageView(packet);
+		try {
+			view.getQuestionDNSName(0);
+			fail();
+		} catch (DNSException expected) {
+		}
+	}
+	
+	@Test
+	public void rejectsTruncatedName() {
+		byte[] packet = {0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 5, 'a', 'b'};
+		try {
+			new DNSMessageView(packet);
+			fail();
+		} catch (DNSException expected) {
+		}
+	}
+	
+	@Test
+	public void rejectsCountsExceedingMessage() {
+		byte[] packet = {0, 0, (byte) 0x84, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+				(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF};
+		DNSMessageView view = new DNSMessageView();
+		try {
+			view.reset(packet, 0, packet.length);
+			fail();
+		} catch (DNSException expected) {
+		}
+		assertEquals(0, view.getRecordCount());
+	}
+	
+	@Test
+	public void rejectsShortSRV() {
+		byte[] packet = {0, 0, (byte) 0x84, 0, 0, 0, 0, 1, 0, 0, 0, 0,
+				1, 'a', 0, 0, 33, 0, 1, 0, 0, 0, 120, 0, 4, 0, 0, 0, 0};
+		try {
+			new DNSMessageView(packet);
+			fail();
+		} catch (DNSException expected) {
+		}
+	}
+	
+	/**
+	 * @return a response carrying the answers, with compressed names
+	 */
+	static byte[] response(DNSAnswer... answers) {
+		byte[] packet = new DNSMessage(new ArrayList<DNSQuestion>(), Arrays.asList(answers)).serialize();
+		// QR and AA
+		packet[2] = (byte) 0x84;
+		return packet;
+	}
+	
+	static byte[] txt(String... strings) {
+		DNSBuffer buffer = new DNSBuffer(1024);
+		for (String string : strings) {
+			buffer.writeByte((byte) DNSBuffer.stringToBytes(string).length);
+			buffer.writeString(string);
+		}
+		return Arrays.copyOf(buffer.bytes, buffer.offset);
+	}
+	
+	/**
+	 * @return a query with one PTR question whose name consists of the given bytes
+	 */
+	private static byte[] query(int... name) {
+		byte[] packet = new byte[12 + name.length + 4];
+		packet[5] = 1;
+		for (int i = 0; i < name.length; i++) {
+			packet[12 + i] = (byte) name[i];
+		}
+		packet[12 + name.length + 1] = 12;
+		packet[12 + name.length + 3] = 1;
+		return packet;
+	}
+}
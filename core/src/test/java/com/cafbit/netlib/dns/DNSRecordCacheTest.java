@@ -0,0 +1,166 @@
+package com.cafbit.netlib.dns;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DNSRecordCacheTest {
+	
+	private static final String HOST = "printer.local";
+	private static final int A = DNSComponent.Type.A.qtype;
+	
+	private final List<DNSRecordCache.Record> expired = new ArrayList<>();
+	private final DNSRecordCache cache = new DNSRecordCache(new DNSRecordCache.Listener() {
+		@Override
+		public void onRecordExpired(DNSRecordCache.Record record) {
+			expired.add(record);
+		}
+	});
+	
+	@Test
+	public void expiresAfterTtl() {
+		DNSRecordCache.Record record = put(address(1, 10, false), 0);
+		
+		assertEquals(1, cache.size());
+		assertTrue(cache.expire(9999).isEmpty());
+		assertEquals(1, cache.get(HOST, A).size());
+		List<DNSRecordCache.Record> removed = cache.expire(10000);
+		assertEquals(1, removed.size());
+		assertSame(record, removed.get(0));
+		assertEquals(removed, expired);
+		assertEquals(0, cache.size());
+		assertTrue(cache.get(HOST, A).isEmpty());
+		assertEquals(Long.MAX_VALUE, cache.nextEvent());
+	}
+	
+	@Test
+	public void receivingAgainExtendsLifetime() {
+		put(address(1, 10, false), 0);
+		put(address(1, 10, false), 8000);
+		
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getHits());
+		assertTrue(cache.expire(10000).isEmpty());
+		assertEquals(1, cache.expire(18000).size());
+	}
+	
+	@Test
+	public void refreshesAtEachRefreshPointOnce() {
+		DNSRecordCache.Record record = put(address(1, 100, false), 0);
+		
+		assertTrue(cache.refresh(79999).isEmpty());
+		assertTrue(cache.nextEvent() >= 80000 && cache.nextEvent() <= 82000);
+		// 80% of the lifetime plus up to 2% jitter
+		assertEquals(1, cache.refresh(82000).size());
+		assertSame(record, cache.refresh(87000).get(0));
+		assertTrue(cache.refresh(87000).isEmpty());
+		// refresh points which have been missed are collapsed into one
+		assertEquals(1, cache.refresh(97000).size());
+		assertTrue(cache.refresh(99999).isEmpty());
+		assertTrue(expired.isEmpty());
+		assertTrue(cache.refresh(100000).isEmpty());
+		assertEquals(1, expired.size());
+	}
+	
+	@Test
+	public void receivingAgainRestartsRefresh() {
+		put(address(1, 100, false), 0);
+		put(address(1, 100, false), 50000);
+		
+		assertTrue(cache.refresh(120000).isEmpty());
+		assertEquals(1, cache.refresh(132000).size());
+	}
+	
+	@Test
+	public void goodbyeExpiresAfterOneSecond() {
+		put(address(1, 120, false), 0);
+		put(address(1, 0, false), 5000);
+		
+		assertEquals(1, cache.size());
+		// a record saying goodbye is not queried for again
+		assertTrue(cache.refresh(5999).isEmpty());
+		assertEquals(5000 + DNSRecordCache.FLUSH_DELAY, cache.nextEvent());
+		assertEquals(1, cache.expire(6000).size());
+		assertEquals(0, cache.size());
+	}
+	
+	@Test
+	public void goodbyeForUnknownRecordIsIgnored() {
+		assertNull(put(address(1, 0, false), 0));
+		assertEquals(0, cache.size());
+	}
+	
+	@Test
+	public void negativeTtlIsGoodbye() {
+		put(address(1, 120, false), 0);
+		put(address(1, -1, false), 5000);
+		
+		assertEquals(1, cache.expire(6000).size());
+	}
+	
+	@Test
+	public void cacheFlushExpiresOtherRecordsOfTheSet() {
+		put(address(1, 120, false), 0);
+		put(address(2, 120, false), 0);
+		put(address(3, 120, true), 5000);
+		
+		assertEquals(3, cache.size());
+		assertEquals(2, cache.expire(6000).size());
+		assertEquals(1, cache.get(HOST, A).size());
+	}
+	
+	@Test
+	public void cacheFlushKeepsRecordsReceivedWithinOneSecond() {
+		// records of one set may be spread over several packets
+		put(address(1, 120, true), 0);
+		put(address(2, 120, true), 500);
+		
+		assertTrue(cache.expire(2000).isEmpty());
+		assertEquals(2, cache.get(HOST, A).size());
+	}
+	
+	@Test
+	public void knownAnswersUntilHalfOfLifetime() {
+		byte[] packet = address(1, 100, false);
+		put(packet, 0);
+		DNSMessageView view = new DNSMessageView(packet);
+		
+		List<DNSAnswer> answers = new ArrayList<>();
+		cache.getKnownAnswers(HOST, A, 20000, answers);
+		assertEquals(1, answers.size());
+		assertEquals(80, answers.get(0).ttl);
+		assertTrue(cache.isKnownAnswer(view, 0, 50000));
+		assertTrue(!cache.isKnownAnswer(view, 0, 50001));
+		answers.clear();
+		cache.getKnownAnswers(HOST, A, 50001, answers);
+		assertTrue(answers.isEmpty());
+	}
+	
+	@Test
+	public void lookupByInternedName() {
+		put(address(1, 100, false), 0);
+		DNSName name = DNSName.of("Printer.LOCAL");
+		
+		assertEquals(cache.get(HOST, A), cache.get(name, A));
+		List<DNSAnswer> answers = new ArrayList<>();
+		cache.getKnownAnswers(name, A, 0, answers);
+		assertEquals(1, answers.size());
+		assertTrue(cache.get(name, DNSComponent.Type.AAAA.qtype).isEmpty());
+	}
+	
+	private DNSRecordCache.Record put(byte[] packet, long now) {
+		return cache.put(new DNSMessageView(packet), 0, now);
+	}
+	
+	private static byte[] address(int host, int ttl, boolean cacheFlush) {
+		DNSAnswer answer = new DNSAnswer(HOST, DNSComponent.Type.A, ttl, new byte[]{10, 0, 0, (byte) host}, null);
+		answer.cacheFlush = cacheFlush;
+		return DNSMessageViewTest.response(answer);
+	}
+}